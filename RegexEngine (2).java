@@ -1,20 +1,119 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
 
 public class RegexEngine {
 
+    // Label of epsilon transitions; isValid never lets it into a pattern, unlike the old 'E'
+    public static final char EPSILON = '\0';
+
     public boolean isValid(String re) {
         if (re.isEmpty()) {
             return false;
         }
-        if(re.charAt(0)=='*' || re.charAt(0)==' ')
+        if(re.charAt(0)=='*' || re.charAt(0)=='{' || re.charAt(0)==' ')
             {
                 return false;
             }
         int openParenCount = 0;
-        for (char c : re.toCharArray()) {
-            if (!Character.isLetter(c) && !Character.isDigit(c) && c != '(' && c != ')' && c != '*' && c != '+' && c != '|' && c != ' ') {
+        // Whether the sequence so far has something a quantifier can apply to, as in parse
+        boolean operand = false;
+        for (int i = 0; i < re.length(); i++) {
+            char c = re.charAt(i);
+            if (c == '\\') {
+                // An escape makes any char but EPSILON a literal, e.g. \. or \[
+                if (++i == re.length() || re.charAt(i) == EPSILON) return false;
+                operand = true;
+                continue;
+            }
+            if ((c == '*' || c == '+' || c == '{') && !operand) {
+                return false;
+            }
+            if (c == '[' || c == '{') {
+                operand = true;
+                int end = closing(re, i);
+                if (end < 0) return false;
+                try {
+                    if (c == '[') {
+                        classRanges(re, i + 1, end);
+                    } else {
+                        repeatBounds(re, i + 1, end);
+                    }
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+                i = end;
+                continue;
+            }
+            if (!Character.isLetter(c) && !Character.isDigit(c) && c != '(' && c != ')' && c != '*' && c != '+' && c != '|' && c != ' ' && c != '.') {
                 return false;
             }
+            if (c != ' ') {
+                operand = c != '(' && c != '|';
+            }
             if (c == '(') openParenCount++;
             if (c == ')') openParenCount--;
             if (openParenCount < 0) return false; // Closing parenthesis before matching open
@@ -23,14 +122,21 @@ public class RegexEngine {
     }
 
     public static class Transition {
-        int from;
-        int to;
-        Character alpha;
+        final int from;
+        final int to;
+        final Character alpha;
+        // Last char of the range [alpha, hi] the edge reads; alpha itself for a single char
+        final char hi;
 
         public Transition(int from, int to, Character alpha) {
+            this(from, to, alpha, alpha);
+        }
+
+        public Transition(int from, int to, char lo, char hi) {
             this.from = from;
             this.to = to;
-            this.alpha = alpha;
+            this.alpha = lo;
+            this.hi = hi;
         }
     }
 
@@ -39,6 +145,19 @@ public class RegexEngine {
         ArrayList<Transition> transitions;
         int accept;
         int start;
+        // Set by isInputValid from the parse tree; null when unknown or nothing is required
+        Prefilter prefilter;
+        // Parse tree and group count kept by isInputValid for CaptureMatcher; tree is null for
+        // automata from the builders
+        Node tree;
+        int groups;
+        // Compiled form reused by isAccepted(ENFA, String) while the edge count, start and accept
+        // are the ones it was built from; the builders only ever add edges, so that catches edits.
+        // Racing callers may both compile, and either result is correct.
+        private CompiledENFA compiled;
+        private int compiledEdges = -1;
+        private int compiledStart;
+        private int compiledAccept;
 
         public ENFA() {
             this.states = new ArrayList<>();
@@ -73,238 +192,5117 @@ public class RegexEngine {
         public void display() {
             System.out.println("Transition Table:");
             for (Transition t : transitions) {
-                System.out.println("(" + t.from + ", " + t.alpha + ", " + t.to + ")");
+                String label = t.alpha == EPSILON ? "E" : t.alpha == t.hi ? String.valueOf(t.alpha) : t.alpha + "-" + t.hi;
+                System.out.println("(" + t.from + ", " + label + ", " + t.to + ")");
             }
         }
-    }
 
-    public static ENFA kleenePlus(ENFA enfa1) {
-        ENFA result = new ENFA(enfa1.states.size() + 1);
-        result.transitions.add(new Transition(0, 1, 'E'));
-        for (Transition t : enfa1.transitions) {
-            result.transitions.add(new Transition(t.from + 1, t.to + 1, t.alpha));
+        public CompiledENFA compile() {
+            return new CompiledENFA(this);
         }
-        result.transitions.add(new Transition(enfa1.states.size(), 1, 'E'));
-        result.transitions.add(new Transition(enfa1.states.size(), enfa1.states.size() + 1, 'E'));
-        result.accept = enfa1.states.size() + 1;
-        return result;
-    }
 
-    public static ENFA kleene(ENFA enfa1) {
-        ENFA result = new ENFA(enfa1.states.size() + 2);
-        result.transitions.add(new Transition(0, 1, 'E'));
-        for (Transition t : enfa1.transitions) {
-            result.transitions.add(new Transition(t.from + 1, t.to + 1, t.alpha));
+        CompiledENFA compiled() {
+            CompiledENFA c = compiled;
+            if (c == null || compiledEdges != transitions.size() || compiledStart != start || compiledAccept != accept) {
+                compiledEdges = transitions.size();
+                compiledStart = start;
+                compiledAccept = accept;
+                c = compile();
+                compiled = c;
+            }
+            return c;
         }
-        result.transitions.add(new Transition(enfa1.states.size(), enfa1.states.size() + 1, 'E'));
-        result.transitions.add(new Transition(enfa1.states.size(), 1, 'E'));
-        result.transitions.add(new Transition(0, enfa1.states.size() + 1, 'E'));
-        result.accept = enfa1.states.size() + 1;
-        return result;
-    }
 
-    public static ENFA concat(ENFA enfa1, ENFA enfa2) {
-        enfa2.states.remove(0);
-        for (Transition t : enfa2.transitions) {
-            enfa1.transitions.add(new Transition(t.from + enfa1.states.size() - 1, t.to + enfa1.states.size() - 1, t.alpha));
+        public Prefilter prefilter() {
+            return prefilter;
         }
-        for (Integer i : enfa2.states) {
-            enfa1.states.add(i + enfa1.states.size() - 1);
+
+        // Number of state ids in use; states.size() undercounts after kleenePlus
+        int size() {
+            int n = Math.max(states.size(), Math.max(start, accept) + 1);
+            for (Transition t : transitions) {
+                n = Math.max(n, Math.max(t.from, t.to) + 1);
+            }
+            return n;
         }
-        enfa1.accept = enfa1.states.size() - 1;
-        return enfa1;
     }
 
-    public static ENFA union(ENFA enfa1, ENFA enfa2) {
-        ENFA result = new ENFA(enfa1.states.size() + enfa2.states.size() + 2);
-        result.transitions.add(new Transition(0, 1, 'E'));
-        for (Transition t : enfa1.transitions) {
-            result.transitions.add(new Transition(t.from + 1, t.to + 1, t.alpha));
+    // Epsilon removal and state reduction. Every state takes over the labelled edges of its
+    // epsilon closure; states that are unreachable or can no longer reach the accept state are
+    // dropped; then states with the same accepting flag and the same edges, comparing targets
+    // after earlier merges, are merged until no two states are alike. Engines expect a single
+    // accept state, so accepting states keep one epsilon edge into it. Automata whose closures
+    // and edges would take more than MAX_WORK steps to collect are left as they are; merging is
+    // charged against the same budget and stops when it runs out, keeping the merges so far.
+    public static final class Reduction {
+        static final int MAX_WORK = 1 << 20;
+
+        final ENFA result;
+        final int statesBefore;
+        final int transitionsBefore;
+        final int epsilonBefore;
+        final int statesAfter;
+        final int transitionsAfter;
+        final int epsilonAfter;
+
+        private Reduction(ENFA before, ENFA after) {
+            this.result = after;
+            this.statesBefore = before.size();
+            this.transitionsBefore = before.transitions.size();
+            this.epsilonBefore = epsilonCount(before);
+            this.statesAfter = after.size();
+            this.transitionsAfter = after.transitions.size();
+            this.epsilonAfter = epsilonCount(after);
         }
-        result.transitions.add(new Transition(enfa1.states.size(), enfa1.states.size() + enfa2.states.size() + 1, 'E'));
-        result.transitions.add(new Transition(0, enfa1.states.size() + 1, 'E'));
-        for (Transition t : enfa2.transitions) {
-            result.transitions.add(new Transition(t.from + enfa1.states.size() + 1, t.to + enfa1.states.size() + 1, t.alpha));
+
+        public static Reduction of(ENFA enfa) {
+            ENFA reduced = reduce(enfa);
+            return new Reduction(enfa, reduced != null ? reduced : enfa);
         }
-        result.transitions.add(new Transition(enfa2.states.size() + enfa1.states.size(), enfa1.states.size() + enfa2.states.size() + 1, 'E'));
-        result.accept = enfa1.states.size() + enfa2.states.size() + 1;
-        return result;
-    }
 
-    public static ENFA isInputValid(String re) {
-        int pcount = 0;
-        char ch;
-        boolean cflag = false;
-        ENFA enfa1, enfa2;
-        Stack<ENFA> operand = new Stack<>();
-        Stack<Character> operator = new Stack<>();
-        Stack<ENFA> stack_concat = new Stack<>();
+        public ENFA result() {
+            return result;
+        }
 
-        for (int i = 0; i < re.length(); i++) {
-            ch = re.charAt(i);
-            if (Character.isLetter(ch) || Character.isDigit(ch)) {
-                operand.push(new ENFA(ch));
-                if (cflag) {
-                    operator.push('.');
-                } else {
-                    cflag = true;
+        // False when the automaton was over budget and kept as it was
+        public boolean applied() {
+            return statesAfter != statesBefore || transitionsAfter != transitionsBefore;
+        }
+
+        @Override
+        public String toString() {
+            return "states " + statesBefore + " -> " + statesAfter + ", transitions " + transitionsBefore
+                    + " -> " + transitionsAfter + " (epsilon " + epsilonBefore + " -> " + epsilonAfter + ")";
+        }
+
+        static int epsilonCount(ENFA enfa) {
+            int count = 0;
+            for (Transition t : enfa.transitions) {
+                if (t.alpha == EPSILON) {
+                    count++;
                 }
-            } else {
-                if (ch == '(') {
-                    operator.push(ch);
-                    pcount = pcount + 1;
-                } else if (ch == '*') {
-                    operand.push(kleene(operand.pop()));
-                    cflag = true;
-                } else if (ch == '+') {
-                    operand.push(kleenePlus(operand.pop()));
-                    cflag = true;
-                } else if (ch == ')') {
-                    if (pcount == 0) {
-                        cflag = false;
-                        System.out.println("Unbalanced Parenthesis");
-                        System.exit(1);
-                    } else {
-                        pcount = pcount - 1;
-                    }
-                    while (!operator.isEmpty() && operator.peek() != '(') {
-                        char op = operator.pop();
-                        if (op == '.') {
-                            enfa1 = operand.pop();
-                            enfa2 = operand.pop();
-                            operand.push(concat(enfa2, enfa1));
-                        } else if (op == '|') {
-                            enfa1 = operand.pop();
-                            if (!operator.isEmpty() && operator.peek() == '.') {
-                                stack_concat.push(operand.pop());
-                                while (!operator.isEmpty() && operator.peek() == '.') {
-                                    stack_concat.push(operand.pop());
-                                    operator.pop();
-                                }
-                                enfa2 = concat(stack_concat.pop(), stack_concat.pop());
-                                while (!stack_concat.isEmpty()) {
-                                    enfa2 = concat(enfa2, stack_concat.pop());
-                                }
-                            } else {
-                                enfa2 = operand.pop();
+            }
+            return count;
+        }
+
+        // Null when over budget
+        private static ENFA reduce(ENFA enfa) {
+            int n = enfa.size();
+            // Every edge as (lo << 16 | hi) << 32 | target; epsilon edges have both ends EPSILON, which is 0
+            int[] offsets = new int[n + 1];
+            for (Transition t : enfa.transitions) {
+                offsets[t.from + 1]++;
+            }
+            for (int s = 0; s < n; s++) {
+                offsets[s + 1] += offsets[s];
+            }
+            long[] adjacency = new long[enfa.transitions.size()];
+            int[] fill = Arrays.copyOf(offsets, n);
+            for (Transition t : enfa.transitions) {
+                adjacency[fill[t.from]++] = (long) (t.alpha << 16 | t.hi) << 32 | t.to;
+            }
+            // Epsilon-free edges of every state reachable from start, sorted and distinct
+            long[][] edges = new long[n][];
+            boolean[] accepting = new boolean[n];
+            int[] closure = new int[n];
+            int[] mark = new int[n];
+            int[] queue = new int[n];
+            long[] out = new long[16];
+            int queued = 0, work = 0;
+            queue[queued++] = enfa.start;
+            edges[enfa.start] = EMPTY;
+            for (int q = 0; q < queued; q++) {
+                int s = queue[q];
+                int size = 1, count = 0;
+                closure[0] = s;
+                mark[s] = q + 1;
+                for (int k = 0; k < size; k++) {
+                    int t = closure[k];
+                    accepting[s] |= t == enfa.accept;
+                    for (int e = offsets[t]; e < offsets[t + 1]; e++) {
+                        long edge = adjacency[e];
+                        if (edge >>> 32 != EPSILON) {
+                            if (count == out.length) {
+                                out = Arrays.copyOf(out, count * 2);
                             }
-                            operand.push(union(enfa2, enfa1));
+                            out[count++] = edge;
+                        } else if (mark[(int) edge] != q + 1) {
+                            mark[(int) edge] = q + 1;
+                            closure[size++] = (int) edge;
+                        }
+                    }
+                }
+                work += size + count;
+                if (work > MAX_WORK) {
+                    return null;
+                }
+                edges[s] = sortedDistinct(out, 0, count);
+                for (long edge : edges[s]) {
+                    if (edges[(int) edge] == null) {
+                        edges[(int) edge] = EMPTY;
+                        queue[queued++] = (int) edge;
+                    }
+                }
+            }
+            // States that can still reach an accepting state, found backwards from them
+            int[] reverseOffsets = new int[n + 1];
+            for (int q = 0; q < queued; q++) {
+                for (long edge : edges[queue[q]]) {
+                    reverseOffsets[(int) edge + 1]++;
+                }
+            }
+            for (int s = 0; s < n; s++) {
+                reverseOffsets[s + 1] += reverseOffsets[s];
+            }
+            int[] reverse = new int[reverseOffsets[n]];
+            fill = Arrays.copyOf(reverseOffsets, n);
+            for (int q = 0; q < queued; q++) {
+                for (long edge : edges[queue[q]]) {
+                    reverse[fill[(int) edge]++] = queue[q];
+                }
+            }
+            boolean[] live = new boolean[n];
+            int pending = 0;
+            for (int q = 0; q < queued; q++) {
+                if (accepting[queue[q]]) {
+                    live[queue[q]] = true;
+                    closure[pending++] = queue[q];
+                }
+            }
+            while (pending > 0) {
+                int t = closure[--pending];
+                for (int e = reverseOffsets[t]; e < reverseOffsets[t + 1]; e++) {
+                    if (!live[reverse[e]]) {
+                        live[reverse[e]] = true;
+                        closure[pending++] = reverse[e];
+                    }
+                }
+            }
+            live[enfa.start] = true;
+            int[] merged = new int[n];
+            for (int s = 0; s < n; s++) {
+                merged[s] = s;
+            }
+            // Worklist of states whose signature may have changed, first all of them. A merge only
+            // changes the signatures of states with an edge into the merged class, so a chain
+            // costs one pass instead of one round per link. Each merge is sound on its own, so
+            // running out of budget leaves a correct, less reduced automaton.
+            Signature[] signatures = new Signature[n];
+            HashMap<Signature, Integer> owners = new HashMap<>();
+            // Original states of each class as a linked list from its representative
+            int[] nextMember = new int[n];
+            int[] lastMember = new int[n];
+            boolean[] dirty = new boolean[n];
+            int[] worklist = new int[n];
+            int pendingWork = 0;
+            for (int q = queued - 1; q >= 0; q--) {
+                int s = queue[q];
+                nextMember[s] = -1;
+                lastMember[s] = s;
+                if (live[s]) {
+                    dirty[s] = true;
+                    worklist[pendingWork++] = s;
+                }
+            }
+            while (pendingWork > 0 && work <= MAX_WORK) {
+                int s = worklist[--pendingWork];
+                dirty[s] = false;
+                if (merged[s] != s) {
+                    continue;
+                }
+                if (signatures[s] != null) {
+                    owners.remove(signatures[s], s);
+                }
+                Signature signature = signature(s, accepting, edges, live, merged);
+                work += signature.values.length;
+                Integer first = owners.putIfAbsent(signature, s);
+                if (first == null) {
+                    signatures[s] = signature;
+                    continue;
+                }
+                merged[s] = first;
+                signatures[s] = null;
+                for (int m = s; m >= 0; m = nextMember[m]) {
+                    for (int e = reverseOffsets[m]; e < reverseOffsets[m + 1]; e++) {
+                        int p = find(merged, reverse[e]);
+                        if (live[p] && !dirty[p]) {
+                            dirty[p] = true;
+                            worklist[pendingWork++] = p;
                         }
                     }
-                    operator.pop(); // Pop '(' from operator stack
-                } else if (ch == '|') {
-                    operator.push(ch);
-                    cflag = false;
+                    work += reverseOffsets[m + 1] - reverseOffsets[m];
+                }
+                nextMember[lastMember[first]] = s;
+                lastMember[first] = lastMember[s];
+            }
+            // Number the surviving states; an accepting one with no edges can be the accept state
+            int[] block = new int[n];
+            int blocks = 0;
+            for (int q = 0; q < queued; q++) {
+                int s = queue[q];
+                if (live[s] && merged[s] == s) {
+                    block[s] = blocks++;
+                }
+            }
+            ENFA reduced = new ENFA(blocks);
+            int accept = -1;
+            ArrayList<Integer> acceptingBlocks = new ArrayList<>();
+            for (int q = 0; q < queued; q++) {
+                int s = queue[q];
+                if (!live[s] || merged[s] != s) {
+                    continue;
+                }
+                long[] signature = signature(s, accepting, edges, live, merged).values;
+                for (int k = 1; k < signature.length; k++) {
+                    long edge = signature[k];
+                    reduced.transitions.add(new Transition(block[s], block[(int) edge], (char) (edge >>> 48), (char) (edge >>> 32)));
+                }
+                if (accepting[s]) {
+                    if (signature.length == 1 && accept < 0) {
+                        accept = block[s];
+                    } else {
+                        acceptingBlocks.add(block[s]);
+                    }
                 }
             }
+            if (accept < 0) {
+                accept = blocks;
+                reduced.createState(1);
+            }
+            for (int b : acceptingBlocks) {
+                reduced.transitions.add(new Transition(b, accept, EPSILON));
+            }
+            reduced.start = block[find(merged, enfa.start)];
+            reduced.accept = accept;
+            reduced.prefilter = enfa.prefilter;
+            return reduced;
         }
 
-        while (!operator.isEmpty()) {
-            char op = operator.pop();
-            if (op == '.') {
-                enfa1 = operand.pop();
-                enfa2 = operand.pop();
-                operand.push(concat(enfa2, enfa1));
-            } else if (op == '|') {
-                enfa1 = operand.pop();
-                if (!operator.isEmpty() && operator.peek() == '.') {
-                    stack_concat.push(operand.pop());
-                    while (!operator.isEmpty() && operator.peek() == '.') {
-                        stack_concat.push(operand.pop());
-                        operator.pop();
-                    }
-                    enfa2 = concat(stack_concat.pop(), stack_concat.pop());
-                    while (!stack_concat.isEmpty()) {
-                        enfa2 = concat(enfa2, stack_concat.pop());
-                    }
-                } else {
-                    enfa2 = operand.pop();
+        private static final long[] EMPTY = new long[0];
+
+        // Accepting flag, then the distinct edges to live states as label << 32 | merged target
+        private static Signature signature(int s, boolean[] accepting, long[][] edges, boolean[] live, int[] merged) {
+            long[] values = new long[edges[s].length + 1];
+            int count = 1;
+            values[0] = accepting[s] ? 1 : 0;
+            for (long edge : edges[s]) {
+                if (live[(int) edge]) {
+                    values[count++] = (edge >>> 32) << 32 | find(merged, (int) edge);
+                }
+            }
+            long[] sorted = sortedDistinct(values, 1, count);
+            long[] signature = new long[sorted.length + 1];
+            signature[0] = values[0];
+            System.arraycopy(sorted, 0, signature, 1, sorted.length);
+            return new Signature(signature);
+        }
+
+        private static long[] sortedDistinct(long[] values, int from, int to) {
+            Arrays.sort(values, from, to);
+            int count = 0;
+            long[] distinct = new long[to - from];
+            for (int k = from; k < to; k++) {
+                if (count == 0 || distinct[count - 1] != values[k]) {
+                    distinct[count++] = values[k];
                 }
-                operand.push(union(enfa2, enfa1));
             }
+            return count == distinct.length ? distinct : Arrays.copyOf(distinct, count);
+        }
+
+        private static int find(int[] merged, int s) {
+            while (merged[s] != s) {
+                merged[s] = merged[merged[s]];
+                s = merged[s];
+            }
+            return s;
         }
 
-        return operand.pop();
+        private static final class Signature {
+            final long[] values;
+            private final int hash;
+
+            Signature(long[] values) {
+                this.values = values;
+                // Arrays.hashCode folds label and target together, so chains of states collide
+                long h = values.length;
+                for (long v : values) {
+                    h = (h ^ v) * 0x9E3779B97F4A7C15L;
+                }
+                this.hash = (int) (h ^ (h >>> 32));
+            }
+
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof Signature && Arrays.equals(values, ((Signature) o).values);
+            }
+        }
     }
 
-    public static boolean isAccepted(ENFA enfa, String input) {
-        Set<Integer> currentStates = epsilonClosure(enfa, enfa.start);
+    // Immutable CSR form of an ENFA: the edges of state s are [offsets[s], offsets[s + 1]),
+    // with its epsilon edges first
+    public static final class CompiledENFA {
+        public static final int EPSILON_EDGE = -1;
+        // accept of a combined automaton, whose accept states are told apart by tags instead
+        static final int NO_ACCEPT = -1;
+        // Above this the n^2 bits of closure tables cost more than walking epsilon edges
+        static final int MAX_CLOSURE_STATES = 4096;
+
+        final int stateCount;
+        final int start;
+        // NO_ACCEPT for a combined automaton; only its accept tags say which states accept
+        final int accept;
+        final int[] offsets;
+        final int[] targets;
+        final int[] labels;
+        // Last char each edge reads, so edge e reads labels[e] .. ends[e]; EPSILON_EDGE for epsilon
+        final int[] ends;
+        final int words;
+        // Epsilon closure of state s as a bitset at [s * words, (s + 1) * words); null if too large
+        final long[] closures;
+        final CharClasses classes;
+        // Bit-parallel engine for patterns with few enough positions; null otherwise
+        final GlushkovMatcher glushkov;
+        final Prefilter prefilter;
+        // Sizes before and after the Reduction pass; null if it did not run
+        final Reduction reduction;
+
+        // Patterns that fit GlushkovMatcher already run epsilon-free, and removing epsilons can
+        // multiply their labelled edges past its limit. Larger ones are reduced so the sparse-set
+        // simulation stops walking epsilon chains on every char.
+        CompiledENFA(ENFA enfa) {
+            this(enfa, enfa.transitions.size() - Reduction.epsilonCount(enfa) > GlushkovMatcher.MAX_POSITIONS, false);
+        }
+
+        // PatternSet's automaton: not reduced, since its accept tags name states of the input, and
+        // built with only what LazyDFA reads. No closure tables, no GlushkovMatcher and accept is
+        // NO_ACCEPT, so it must only be matched through LazyDFA.matchedTags.
+        static CompiledENFA combined(ENFA enfa) {
+            return new CompiledENFA(enfa, false, true);
+        }
 
-        for (char c : input.toCharArray()) {
-            Set<Integer> nextStates = new HashSet<>();
-            for (int state : currentStates) {
+        CompiledENFA(ENFA source, boolean reduce, boolean combined) {
+            long begin = Metrics.enabled ? System.nanoTime() : 0;
+            this.reduction = reduce ? Reduction.of(source) : null;
+            ENFA enfa = reduce ? reduction.result : source;
+            int n = enfa.size();
+            int[] offsets = new int[n + 1];
+            for (Transition t : enfa.transitions) {
+                offsets[t.from + 1]++;
+            }
+            for (int s = 0; s < n; s++) {
+                offsets[s + 1] += offsets[s];
+            }
+            int[] fill = Arrays.copyOf(offsets, n);
+            int[] targets = new int[enfa.transitions.size()];
+            int[] labels = new int[enfa.transitions.size()];
+            int[] ends = new int[enfa.transitions.size()];
+            for (int pass = 0; pass < 2; pass++) {
                 for (Transition t : enfa.transitions) {
-                    if (t.from == state && t.alpha == c) {
-                        nextStates.add(t.to);
+                    boolean epsilon = t.alpha == EPSILON;
+                    if (epsilon == (pass == 0)) {
+                        targets[fill[t.from]] = t.to;
+                        ends[fill[t.from]] = epsilon ? EPSILON_EDGE : t.hi;
+                        labels[fill[t.from]++] = epsilon ? EPSILON_EDGE : t.alpha;
                     }
                 }
             }
-            currentStates = new HashSet<>(nextStates);
-            // Compute epsilon closure after every character
-            Set<Integer> epsilonClosureStates = new HashSet<>();
-            for (int state : currentStates) {
-                epsilonClosureStates.addAll(epsilonClosure(enfa, state));
+            this.stateCount = n;
+            this.start = enfa.start;
+            this.accept = combined ? NO_ACCEPT : enfa.accept;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.labels = labels;
+            this.ends = ends;
+            this.words = (n + 63) >>> 6;
+            this.closures = !combined && n <= MAX_CLOSURE_STATES ? computeClosures() : null;
+            this.classes = CharClasses.of(this);
+            this.glushkov = combined ? null : GlushkovMatcher.build(this);
+            this.prefilter = enfa.prefilter;
+            if (begin != 0) {
+                Metrics.compiled(begin, this);
             }
-            currentStates = epsilonClosureStates;
         }
 
-        // After processing the entire input, check if any of the current states are accept states
-        return currentStates.contains(enfa.accept);
-    }
+        private long[] computeClosures() {
+            long[] closures = new long[stateCount * words];
+            int[] set = new int[stateCount];
+            int[] mark = new int[stateCount];
+            for (int s = 0; s < stateCount; s++) {
+                int size = addClosure(s, set, 0, mark, s + 1);
+                for (int k = 0; k < size; k++) {
+                    closures[s * words + (set[k] >>> 6)] |= 1L << set[k];
+                }
+            }
+            return closures;
+        }
 
-    private static Set<Integer> epsilonClosure(ENFA enfa, int state) {
-        Set<Integer> closure = new HashSet<>();
-        Stack<Integer> stack = new Stack<>();
-        stack.push(state);
-        while (!stack.isEmpty()) {
-            int s = stack.pop();
-            if (!closure.contains(s)) {
-                closure.add(s);
-                for (Transition t : enfa.transitions) {
-                    if (t.from == s && t.alpha == 'E') {
-                        stack.push(t.to);
+        public int stateCount() {
+            return stateCount;
+        }
+
+        public int transitionCount() {
+            return targets.length;
+        }
+
+        public CharClasses classes() {
+            return classes;
+        }
+
+        public boolean hasPrefilter() {
+            return prefilter != null;
+        }
+
+        public Prefilter prefilter() {
+            return prefilter;
+        }
+
+        public Reduction reduction() {
+            return reduction;
+        }
+
+        public Matcher matcher() {
+            return new Matcher(this);
+        }
+
+        public Matcher matcher(Limits limits) {
+            return new Matcher(this, limits);
+        }
+
+        // Appends state and everything epsilon-reachable from it to set, skipping states
+        // already stamped with gen in mark; returns the new size
+        int addClosure(int state, int[] set, int size, int[] mark, int gen) {
+            if (mark[state] == gen) {
+                return size;
+            }
+            mark[state] = gen;
+            set[size++] = state;
+            for (int i = size - 1; i < size; i++) {
+                int s = set[i];
+                for (int e = offsets[s]; e < offsets[s + 1] && labels[e] == EPSILON_EDGE; e++) {
+                    int t = targets[e];
+                    if (mark[t] != gen) {
+                        mark[t] = gen;
+                        set[size++] = t;
+                    }
+                }
+            }
+            return size;
+        }
+
+        // Closure of every c-successor of the first size states of from, written into to
+        int step(int[] from, int size, char c, int[] to, int[] mark, int gen) {
+            int count = 0;
+            for (int k = 0; k < size; k++) {
+                int s = from[k];
+                for (int e = offsets[s + 1] - 1; e >= offsets[s] && labels[e] != EPSILON_EDGE; e--) {
+                    if (labels[e] <= c && c <= ends[e]) {
+                        count = addClosure(targets[e], to, count, mark, gen);
                     }
                 }
             }
+            return count;
         }
-        return closure;
     }
 
-    public static void main(String[] args) {
-        String re, input;
-        boolean valid;
-        boolean verboseMode = args.length > 0 && "-v".equals(args[0]);
-        RegexEngine as = new RegexEngine();
-        Scanner sc = new Scanner(System.in);
-        System.out.println("Enter the regular Expression:");
-        re = sc.nextLine();
-        valid = as.isValid(re);
-        if (!valid) {
-            System.out.println("Invalid Expression");
-            System.exit(1);
-        } else {
-            ENFA output = as.isInputValid(re);
-            if (verboseMode) {
-                output.display();
+    // Alphabet equivalence classes of a CompiledENFA: two chars share a class when exactly the
+    // same edges read them, and class 0 holds every char no edge reads. Tables indexed by class
+    // need one column per class instead of one per char in the label range.
+    public static final class CharClasses {
+        final char minChar;
+        // Class of minChar + i; chars below the array are in class 0 and chars past it in above
+        final char[] classOf;
+        // Class of the open-ended top range, e.g. what '.' reads past the last other boundary
+        final int above;
+        final int count;
+        // One char of each class, used to step the ENFA on behalf of the whole class
+        final char[] representative;
+
+        private CharClasses(char minChar, char[] classOf, int above, int count) {
+            this.minChar = minChar;
+            this.classOf = classOf;
+            this.above = above;
+            this.count = count;
+            this.representative = new char[count];
+            Arrays.fill(representative, Character.MAX_VALUE);
+            if (above != 0) {
+                representative[above] = (char) (minChar + classOf.length);
             }
-            System.out.println("ready");
-            while (true) {
+            for (int i = classOf.length - 1; i >= 0; i--) {
+                representative[classOf[i]] = (char) (minChar + i);
+            }
+            // Any char outside every edge label stands for class 0
+            char other = 0;
+            while (classOf(other) != 0) {
+                other++;
+            }
+            representative[0] = other;
+        }
 
-                input = sc.nextLine();
-                if(input.length()<=2)
-                {
-                    if(input.charAt(0)==' ' && input.charAt(1)=='*')
-                    {
-                        System.out.println("false");
-                        continue;
+        static CharClasses of(char minChar, char[] classOf, int above, int count) {
+            return new CharClasses(minChar, classOf, above, count);
+        }
 
+        static CharClasses of(CompiledENFA nfa) {
+            // A char's signature is the sorted list of edges (from, to) whose range holds it. Ranges
+            // start at their label and stop at their end + 1, and between two consecutive such
+            // boundaries the signature cannot change, so one sweep finds every run and its class
+            // however wide the ranges are.
+            int labelled = 0;
+            for (int label : nfa.labels) {
+                if (label != CompiledENFA.EPSILON_EDGE) {
+                    labelled++;
+                }
+            }
+            if (labelled == 0) {
+                return new CharClasses((char) 0, new char[0], 0, 1);
+            }
+            long[] events = new long[2 * labelled];
+            long[] edgeKey = new long[nfa.labels.length];
+            int k = 0;
+            for (int s = 0; s < nfa.stateCount; s++) {
+                for (int e = nfa.offsets[s]; e < nfa.offsets[s + 1]; e++) {
+                    if (nfa.labels[e] != CompiledENFA.EPSILON_EDGE) {
+                        edgeKey[e] = (long) s << 32 | nfa.targets[e];
+                        events[k++] = (long) nfa.labels[e] << 32 | (long) e << 1 | 1;
+                        events[k++] = (long) (nfa.ends[e] + 1) << 32 | (long) e << 1;
                     }
                 }
-                if (isAccepted(output, input)) {
-                    System.out.println("true");
-                } else {
-                    System.out.println("false");
+            }
+            Arrays.sort(events);
+            // Edges still open at the sweep position, counted since two ranges may share (from, to)
+            TreeMap<Long, Integer> active = new TreeMap<>();
+            HashMap<List<Long>, Integer> ids = new HashMap<>();
+            int[] bounds = new int[events.length];
+            int[] runClass = new int[events.length];
+            int runs = 0;
+            for (k = 0; k < events.length; ) {
+                int at = (int) (events[k] >>> 32);
+                for (; k < events.length && (int) (events[k] >>> 32) == at; k++) {
+                    long key = edgeKey[(int) events[k] >>> 1];
+                    if ((events[k] & 1) != 0) {
+                        active.merge(key, 1, Integer::sum);
+                    } else if (active.merge(key, -1, Integer::sum) == 0) {
+                        active.remove(key);
+                    }
+                }
+                bounds[runs] = at;
+                runClass[runs++] = active.isEmpty() ? 0
+                        : ids.computeIfAbsent(new ArrayList<>(active.keySet()), signature -> ids.size() + 1);
+            }
+            // The last run always reads nothing. A run reaching the top of the char range becomes
+            // the above class, so '.' and negated classes cost no 64K-entry map.
+            int last = runs - 1, above = 0;
+            if (bounds[last] > Character.MAX_VALUE) {
+                above = runClass[--last];
+            }
+            char lo = (char) bounds[0];
+            char[] classOf = new char[bounds[last] - lo];
+            for (int r = 0; r < last; r++) {
+                Arrays.fill(classOf, bounds[r] - lo, bounds[r + 1] - lo, (char) runClass[r]);
+            }
+            return new CharClasses(lo, classOf, above, ids.size() + 1);
+        }
+
+        public int count() {
+            return count;
+        }
+
+        public int classOf(char c) {
+            int i = c - minChar;
+            return i < 0 ? 0 : i < classOf.length ? classOf[i] : above;
+        }
+    }
+
+    // Bit-parallel simulation of the Glushkov (position) automaton, derived from the Thompson ENFA
+    // by epsilon removal: every labelled edge is one position, bit p means "just read position p"
+    // and bit 0 is the initial state. Each step is a few follow-table lookups ANDed with the
+    // character's position mask, all in one long. Immutable, so one instance serves every thread.
+    public static final class GlushkovMatcher {
+        static final int MAX_POSITIONS = 63;
+
+        final CharClasses classes;
+        // Positions read by each char class; class 0 reads none
+        final long[] masks;
+        final int chunks;
+        // follow[k * 256 + b]: union of the follow sets of the positions set in byte k of the state
+        final long[] follow;
+        final long last;
+
+        private GlushkovMatcher(CharClasses classes, long[] masks, int chunks, long[] follow, long last) {
+            this.classes = classes;
+            this.masks = masks;
+            this.chunks = chunks;
+            this.follow = follow;
+            this.last = last;
+        }
+
+        // Null when the pattern has more positions than fit in a long
+        static GlushkovMatcher build(CompiledENFA nfa) {
+            int m = 0;
+            for (int label : nfa.labels) {
+                if (label != CompiledENFA.EPSILON_EDGE) {
+                    m++;
+                }
+            }
+            if (m > MAX_POSITIONS) {
+                return null;
+            }
+            int[] position = new int[nfa.labels.length];
+            int[] edgeOf = new int[m + 1];
+            for (int e = 0, p = 0; e < nfa.labels.length; e++) {
+                if (nfa.labels[e] != CompiledENFA.EPSILON_EDGE) {
+                    position[e] = ++p;
+                    edgeOf[p] = e;
+                }
+            }
+            long[] masks = new long[nfa.classes.count];
+            long[] followOf = new long[m + 1];
+            long last = 0;
+            int[] set = new int[nfa.stateCount];
+            int[] mark = new int[nfa.stateCount];
+            for (int q = 0; q <= m; q++) {
+                int from = q == 0 ? nfa.start : nfa.targets[edgeOf[q]];
+                int size = nfa.addClosure(from, set, 0, mark, q + 1);
+                for (int k = 0; k < size; k++) {
+                    int s = set[k];
+                    if (s == nfa.accept) {
+                        last |= 1L << q;
+                    }
+                    for (int e = nfa.offsets[s]; e < nfa.offsets[s + 1]; e++) {
+                        if (nfa.labels[e] != CompiledENFA.EPSILON_EDGE) {
+                            followOf[q] |= 1L << position[e];
+                        }
+                    }
+                }
+                if (q > 0) {
+                    int e = edgeOf[q];
+                    for (int col = 1; col < nfa.classes.count; col++) {
+                        char c = nfa.classes.representative[col];
+                        if (nfa.labels[e] <= c && c <= nfa.ends[e]) {
+                            masks[col] |= 1L << q;
+                        }
+                    }
+                }
+            }
+            int chunks = (m + 8) >>> 3;
+            long[] follow = new long[chunks * 256];
+            for (int k = 0; k < chunks; k++) {
+                for (int b = 1; b < 256; b++) {
+                    int q = (k << 3) + Integer.numberOfTrailingZeros(b);
+                    follow[k * 256 + b] = follow[k * 256 + (b & (b - 1))] | (q <= m ? followOf[q] : 0);
+                }
+            }
+            return new GlushkovMatcher(nfa.classes, masks, chunks, follow, last);
+        }
+
+        public boolean matches(CharSequence input) {
+            long d = 1;
+            for (int i = 0; i < input.length(); i++) {
+                int col = classes.classOf(input.charAt(i));
+                if (col == 0) {
+                    return false;
+                }
+                long f = 0;
+                for (int k = 0; k < chunks; k++) {
+                    f |= follow[(k << 8) + ((int) (d >>> (k << 3)) & 0xFF)];
                 }
+                d = f & masks[col];
+                if (d == 0) {
+                    return false;
+                }
+            }
+            return (d & last) != 0;
+        }
+    }
+
+    private static final class StateSet {
+        final int[] states;
+        final int hash;
+
+        StateSet(int[] states) {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateSet && Arrays.equals(states, ((StateSet) o).states);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    public static ENFA kleenePlus(ENFA enfa1) {
+        ENFA result = new ENFA(enfa1.states.size() + 1);
+        result.transitions.add(new Transition(0, 1, EPSILON));
+        for (Transition t : enfa1.transitions) {
+            result.transitions.add(new Transition(t.from + 1, t.to + 1, t.alpha, t.hi));
+        }
+        result.transitions.add(new Transition(enfa1.states.size(), 1, EPSILON));
+        result.transitions.add(new Transition(enfa1.states.size(), enfa1.states.size() + 1, EPSILON));
+        result.accept = enfa1.states.size() + 1;
+        return result;
+    }
+
+    public static ENFA kleene(ENFA enfa1) {
+        ENFA result = new ENFA(enfa1.states.size() + 2);
+        result.transitions.add(new Transition(0, 1, EPSILON));
+        for (Transition t : enfa1.transitions) {
+            result.transitions.add(new Transition(t.from + 1, t.to + 1, t.alpha, t.hi));
+        }
+        result.transitions.add(new Transition(enfa1.states.size(), enfa1.states.size() + 1, EPSILON));
+        result.transitions.add(new Transition(enfa1.states.size(), 1, EPSILON));
+        result.transitions.add(new Transition(0, enfa1.states.size() + 1, EPSILON));
+        result.accept = enfa1.states.size() + 1;
+        return result;
+    }
+
+    // Leaves both operands untouched, so a finished ENFA can be shared and reused
+    public static ENFA concat(ENFA enfa1, ENFA enfa2) {
+        ENFA result = new ENFA(enfa1.states.size() + enfa2.states.size() - 1);
+        result.start = enfa1.start;
+        result.transitions.addAll(enfa1.transitions);
+        int offset = enfa1.states.size() - 1;
+        for (Transition t : enfa2.transitions) {
+            result.transitions.add(new Transition(t.from + offset, t.to + offset, t.alpha, t.hi));
+        }
+        result.accept = result.states.size() - 1;
+        return result;
+    }
+
+    public static ENFA union(ENFA enfa1, ENFA enfa2) {
+        ENFA result = new ENFA(enfa1.states.size() + enfa2.states.size() + 2);
+        result.transitions.add(new Transition(0, 1, EPSILON));
+        for (Transition t : enfa1.transitions) {
+            result.transitions.add(new Transition(t.from + 1, t.to + 1, t.alpha, t.hi));
+        }
+        result.transitions.add(new Transition(enfa1.states.size(), enfa1.states.size() + enfa2.states.size() + 1, EPSILON));
+        result.transitions.add(new Transition(0, enfa1.states.size() + 1, EPSILON));
+        for (Transition t : enfa2.transitions) {
+            result.transitions.add(new Transition(t.from + enfa1.states.size() + 1, t.to + enfa1.states.size() + 1, t.alpha, t.hi));
+        }
+        result.transitions.add(new Transition(enfa2.states.size() + enfa1.states.size(), enfa1.states.size() + enfa2.states.size() + 1, EPSILON));
+        result.accept = enfa1.states.size() + enfa2.states.size() + 1;
+        return result;
+    }
+
+    // Budgets for patterns and inputs that cannot be trusted. maxStates caps both the states and
+    // the edges isInputValid may build, and dfaBytes the subset states DFA.compile may hold;
+    // maxSteps and maxNanos cap a single match, a step being one live state or thread carried over
+    // one char. Going over any of them throws LimitExceededException, and Long.MAX_VALUE leaves a
+    // budget open.
+    public static final class Limits {
+        // Applied when no Limits are given: well above what any sane pattern needs, but low enough
+        // that nested counted repetition fails before it exhausts the heap. Matches are unbounded.
+        public static final Limits DEFAULT = new Limits(1 << 22, 1L << 28, Long.MAX_VALUE, Long.MAX_VALUE);
+        // The clock is read once every CLOCK_EVERY chars of a match
+        static final int CLOCK_EVERY = 1024;
+
+        final int maxStates;
+        final long dfaBytes;
+        final long maxSteps;
+        final long maxNanos;
+
+        public Limits(int maxStates, long dfaBytes, long maxSteps, long maxNanos) {
+            if (maxStates < 1 || dfaBytes < 1 || maxSteps < 1 || maxNanos < 1) {
+                throw new IllegalArgumentException("Limits must be positive");
+            }
+            this.maxStates = maxStates;
+            this.dfaBytes = dfaBytes;
+            this.maxSteps = maxSteps;
+            this.maxNanos = maxNanos;
+        }
+
+        // These compile budgets with the given per-match ones
+        public Limits perMatch(long maxSteps, long maxNanos) {
+            return new Limits(maxStates, dfaBytes, maxSteps, maxNanos);
+        }
+
+        // Start of a match as passed to check; 0 when there is no time budget to measure against
+        long begin() {
+            return maxNanos == Long.MAX_VALUE ? 0 : System.nanoTime();
+        }
+
+        // Throws once a match started at begin has taken more than maxSteps steps, or more than
+        // maxNanos when position is a multiple of CLOCK_EVERY
+        void check(long steps, int position, long begin) {
+            if (steps > maxSteps) {
+                throw new LimitExceededException("steps", maxSteps, "Match took more than " + maxSteps + " steps");
+            }
+            if (begin != 0 && position % CLOCK_EVERY == 0 && System.nanoTime() - begin > maxNanos) {
+                throw new LimitExceededException("nanos", maxNanos, "Match took more than " + maxNanos + " ns");
+            }
+        }
+    }
+
+    // Thrown when a pattern or a match goes over its Limits; limit is "states", "dfaBytes", "steps"
+    // or "nanos", and bound the budget it went over
+    public static final class LimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final String limit;
+        private final long bound;
+
+        LimitExceededException(String limit, long bound, String message) {
+            super(message);
+            this.limit = limit;
+            this.bound = bound;
+        }
+
+        public String limit() {
+            return limit;
+        }
+
+        public long bound() {
+            return bound;
+        }
+    }
+
+    public static ENFA isInputValid(String re) {
+        return isInputValid(re, Limits.DEFAULT);
+    }
+
+    // Throws IllegalArgumentException if re is malformed, LimitExceededException if it is too big
+    public static ENFA isInputValid(String re, Limits limits) {
+        long begin = Metrics.enabled ? System.nanoTime() : 0;
+        Arena arena = new Arena(limits.maxStates);
+        int start = arena.newState();
+        Node root = parse(re);
+        int accept = arena.emit(root, start);
+        ENFA enfa = arena.toENFA(start, accept);
+        enfa.prefilter = Prefilter.of(root);
+        enfa.tree = root;
+        enfa.groups = countGroups(re);
+        if (begin != 0) {
+            Metrics.parsed(begin);
+        }
+        return enfa;
+    }
+
+    // Parsed expression: LITERAL carries c, CLASS its ranges, CONCAT and UNION carry their operands
+    // in order, STAR, PLUS, OPTIONAL and GROUP carry one. Sequences and alternations are n-ary so a
+    // long run of either stays flat. Counted repetition is expanded into these, sharing the operand.
+    static final class Node {
+        static final int LITERAL = 0;
+        static final int CONCAT = 1;
+        static final int UNION = 2;
+        static final int STAR = 3;
+        static final int PLUS = 4;
+        static final int CLASS = 5;
+        static final int OPTIONAL = 6;
+        static final int GROUP = 7;
+
+        final int kind;
+        final char c;
+        final Node[] children;
+        // Sorted, disjoint inclusive ranges as lo, hi pairs; CLASS only
+        final char[] ranges;
+        // Capture group number, counting opening parentheses from 1; GROUP only
+        final int group;
+
+        Node(int kind, char c, Node... children) {
+            this.kind = kind;
+            this.c = c;
+            this.children = children;
+            this.ranges = null;
+            this.group = 0;
+        }
+
+        Node(char[] ranges) {
+            this.kind = CLASS;
+            this.c = EPSILON;
+            this.children = new Node[0];
+            this.ranges = ranges;
+            this.group = 0;
+        }
+
+        Node(int group, Node body) {
+            this.kind = GROUP;
+            this.c = EPSILON;
+            this.children = new Node[] {body};
+            this.ranges = null;
+            this.group = group;
+        }
+
+        static Node sequence(List<Node> items) {
+            return items.size() == 1 ? items.get(0) : new Node(CONCAT, EPSILON, items.toArray(new Node[0]));
+        }
+
+        static Node alternation(List<Node> items) {
+            return items.size() == 1 ? items.get(0) : new Node(UNION, EPSILON, items.toArray(new Node[0]));
+        }
+    }
+
+    // Largest n or m accepted in {n,m}; every copy of the operand is emitted separately
+    static final int MAX_REPEAT = 1000;
+
+    // What '.' reads: every char but the newline and EPSILON
+    private static final char[] ANY = {'\u0001', '\t', '\u000B', Character.MAX_VALUE};
+
+    // Single left-to-right pass with an explicit stack of open groups, so nesting depth costs heap
+    // rather than call stack. Characters outside the grammar (spaces) are skipped as before.
+    static Node parse(String re) {
+        ArrayDeque<ArrayList<Node>> openAlternatives = new ArrayDeque<>();
+        ArrayDeque<ArrayList<Node>> openSequences = new ArrayDeque<>();
+        ArrayDeque<Integer> openGroups = new ArrayDeque<>();
+        ArrayList<Node> alternatives = new ArrayList<>();
+        ArrayList<Node> sequence = new ArrayList<>();
+        int groups = 0;
+        for (int i = 0; i < re.length(); i++) {
+            char ch = re.charAt(i);
+            if (Character.isLetter(ch) || Character.isDigit(ch)) {
+                sequence.add(new Node(Node.LITERAL, ch));
+            } else if (ch == '\\') {
+                if (i + 1 == re.length() || re.charAt(i + 1) == EPSILON) {
+                    throw new IllegalArgumentException("Bad escape at index " + i + " in " + re);
+                }
+                sequence.add(new Node(Node.LITERAL, unescape(re.charAt(++i))));
+            } else if (ch == '.') {
+                sequence.add(new Node(ANY));
+            } else if (ch == '[') {
+                int end = closing(re, i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed class at index " + i + " in " + re);
+                }
+                sequence.add(new Node(classRanges(re, i + 1, end)));
+                i = end;
+            } else if (ch == '{') {
+                int end = closing(re, i);
+                if (sequence.isEmpty() || end < 0) {
+                    throw new IllegalArgumentException("Bad repetition at index " + i + " in " + re);
+                }
+                int[] bounds = repeatBounds(re, i + 1, end);
+                int last = sequence.size() - 1;
+                sequence.set(last, repeat(sequence.get(last), bounds[0], bounds[1]));
+                i = end;
+            } else if (ch == '(') {
+                openAlternatives.push(alternatives);
+                openSequences.push(sequence);
+                openGroups.push(++groups);
+                alternatives = new ArrayList<>();
+                sequence = new ArrayList<>();
+            } else if (ch == ')') {
+                if (openAlternatives.isEmpty()) {
+                    throw new IllegalArgumentException("Unbalanced parenthesis at index " + i + " in " + re);
+                }
+                alternatives.add(Node.sequence(sequence));
+                Node group = new Node(openGroups.pop(), Node.alternation(alternatives));
+                alternatives = openAlternatives.pop();
+                sequence = openSequences.pop();
+                sequence.add(group);
+            } else if (ch == '*' || ch == '+') {
+                if (sequence.isEmpty()) {
+                    throw new IllegalArgumentException("Nothing to repeat at index " + i + " in " + re);
+                }
+                int last = sequence.size() - 1;
+                sequence.set(last, new Node(ch == '*' ? Node.STAR : Node.PLUS, EPSILON, sequence.get(last)));
+            } else if (ch == '|') {
+                alternatives.add(Node.sequence(sequence));
+                sequence = new ArrayList<>();
+            }
+        }
+        if (!openAlternatives.isEmpty()) {
+            throw new IllegalArgumentException("Unbalanced parenthesis in " + re);
+        }
+        alternatives.add(Node.sequence(sequence));
+        return Node.alternation(alternatives);
+    }
+
+    // Every unescaped '(' outside a class opens a group, including those {0} leaves out of the tree
+    static int countGroups(String re) {
+        int groups = 0;
+        for (int i = 0; i < re.length(); i++) {
+            char c = re.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                int end = closing(re, i);
+                i = end < 0 ? re.length() : end;
+            } else if (c == '(') {
+                groups++;
+            }
+        }
+        return groups;
+    }
+
+    // Index of the ']' or '}' closing the bracket at re[open], skipping escaped chars; -1 if none
+    static int closing(String re, int open) {
+        char close = re.charAt(open) == '[' ? ']' : '}';
+        for (int i = open + 1; i < re.length(); i++) {
+            char c = re.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == close) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static char unescape(char c) {
+        return c == 'n' ? '\n' : c == 't' ? '\t' : c == 'r' ? '\r' : c;
+    }
+
+    // Ranges of the class body re[from, to), e.g. "^a-z0-9", merged and negated as lo, hi pairs.
+    // Inside a class every char is literal except '\\', a leading '^' and a '-' between two chars.
+    static char[] classRanges(String re, int from, int to) {
+        boolean negate = from < to && re.charAt(from) == '^';
+        int i = negate ? from + 1 : from;
+        if (i == to) {
+            throw new IllegalArgumentException("Empty class at index " + from + " in " + re);
+        }
+        int[] pairs = new int[2 * (to - i)];
+        int count = 0;
+        while (i < to) {
+            char lo = re.charAt(i++);
+            if (lo == '\\') {
+                lo = unescape(re.charAt(i++));
+            }
+            char hi = lo;
+            if (i + 1 < to && re.charAt(i) == '-') {
+                hi = re.charAt(i + 1);
+                i += 2;
+                if (hi == '\\') {
+                    hi = unescape(re.charAt(i++));
+                }
+                if (hi < lo) {
+                    throw new IllegalArgumentException("Bad range " + lo + "-" + hi + " in " + re);
+                }
+            }
+            pairs[count++] = (int) lo << 16 | hi;
+        }
+        Arrays.sort(pairs, 0, count);
+        // Merge overlapping and adjacent ranges; EPSILON is never read, so every range starts at 1 or above
+        char[] ranges = new char[2 * count + 2];
+        int size = 0;
+        for (int k = 0; k < count; k++) {
+            int lo = Math.max(pairs[k] >>> 16, 1), hi = pairs[k] & 0xFFFF;
+            if (hi < lo) {
+                continue;
+            }
+            if (size > 0 && lo <= ranges[size - 1] + 1) {
+                ranges[size - 1] = (char) Math.max(ranges[size - 1], hi);
+            } else {
+                ranges[size++] = (char) lo;
+                ranges[size++] = (char) hi;
+            }
+        }
+        if (!negate) {
+            return Arrays.copyOf(ranges, size);
+        }
+        char[] complement = new char[size + 2];
+        int n = 0, next = 1;
+        for (int k = 0; k < size; k += 2) {
+            if (ranges[k] > next) {
+                complement[n++] = (char) next;
+                complement[n++] = (char) (ranges[k] - 1);
+            }
+            next = ranges[k + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            complement[n++] = (char) next;
+            complement[n++] = Character.MAX_VALUE;
+        }
+        return Arrays.copyOf(complement, n);
+    }
+
+    // {n}, {n,} and {n,m} as {n, m}, with m = -1 for no upper bound
+    static int[] repeatBounds(String re, int from, int to) {
+        int comma = re.indexOf(',', from);
+        if (comma < 0 || comma > to) {
+            comma = to;
+        }
+        int min = count(re, from, comma);
+        int max = comma == to ? min : comma + 1 == to ? -1 : count(re, comma + 1, to);
+        if (max >= 0 && max < min) {
+            throw new IllegalArgumentException("Bad repetition {" + re.substring(from, to) + "} in " + re);
+        }
+        return new int[] {min, max};
+    }
+
+    private static int count(String re, int from, int to) {
+        if (from == to || to - from > 4) {
+            throw new IllegalArgumentException("Bad repetition count in " + re);
+        }
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            char c = re.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Bad repetition count in " + re);
+            }
+            n = n * 10 + (c - '0');
+        }
+        if (n > MAX_REPEAT) {
+            throw new IllegalArgumentException("Repetition count " + n + " above " + MAX_REPEAT + " in " + re);
+        }
+        return n;
+    }
+
+    // x{n,m} as n copies of x followed by m - n nested optional ones, x(x(x)?)? rather than
+    // x?x?x?, so at most one way through reads each prefix; x{n,} ends in x+ instead
+    static Node repeat(Node x, int min, int max) {
+        ArrayList<Node> items = new ArrayList<>();
+        for (int k = max < 0 && min > 0 ? 1 : 0; k < min; k++) {
+            items.add(x);
+        }
+        if (max < 0) {
+            items.add(new Node(min > 0 ? Node.PLUS : Node.STAR, EPSILON, x));
+        } else if (max > min) {
+            Node tail = new Node(Node.OPTIONAL, EPSILON, x);
+            for (int k = min + 1; k < max; k++) {
+                tail = new Node(Node.OPTIONAL, EPSILON, new Node(Node.CONCAT, EPSILON, x, tail));
+            }
+            items.add(tail);
+        }
+        return Node.sequence(items);
+    }
+
+    // Literals of which every match contains at least one, derived from the parse tree, so lines
+    // without any of them are rejected by a plain scan before the automaton runs. Safe to share.
+    public static final class Prefilter {
+        static final int MAX_LITERALS = 16;
+        // Literal runs stop growing here; a longer required literal filters no better, and
+        // capping it keeps the analysis linear in the length of the pattern
+        static final int MAX_LITERAL_LENGTH = 64;
+
+        final String[] literals;
+        final char minChar;
+        final int width;
+        // Literals grouped by first character, indexed from minChar; null where none starts
+        final String[][] byFirst;
+        private final LongAdder checks = new LongAdder();
+        private final LongAdder passes = new LongAdder();
+
+        private Prefilter(Set<String> literals) {
+            // A literal containing another one can never be the only one present, so drop it
+            ArrayList<String> kept = new ArrayList<>();
+            for (String s : literals) {
+                boolean redundant = false;
+                for (String t : literals) {
+                    redundant |= t.length() < s.length() && s.contains(t);
+                }
+                if (!redundant) {
+                    kept.add(s);
+                }
+            }
+            this.literals = kept.toArray(new String[0]);
+            Arrays.sort(this.literals);
+            int lo = Character.MAX_VALUE, hi = Character.MIN_VALUE;
+            for (String s : this.literals) {
+                lo = Math.min(lo, s.charAt(0));
+                hi = Math.max(hi, s.charAt(0));
+            }
+            this.minChar = (char) lo;
+            this.width = hi - lo + 1;
+            this.byFirst = new String[width][];
+            for (String s : this.literals) {
+                String[] group = byFirst[s.charAt(0) - lo];
+                group = group == null ? new String[1] : Arrays.copyOf(group, group.length + 1);
+                group[group.length - 1] = s;
+                byFirst[s.charAt(0) - lo] = group;
+            }
+        }
+
+        // Null when some match can avoid every literal, e.g. a pattern that accepts the empty string
+        static Prefilter of(Node root) {
+            Set<String> required = analyze(root);
+            return required == null ? null : new Prefilter(required);
+        }
+
+        public List<String> literals() {
+            return Collections.unmodifiableList(Arrays.asList(literals));
+        }
+
+        // False means input cannot match; true means the automaton has to decide
+        public boolean test(CharSequence input) {
+            boolean pass = contains(input);
+            checks.increment();
+            if (pass) {
+                passes.increment();
+            }
+            return pass;
+        }
+
+        public long checkCount() {
+            return checks.sum();
+        }
+
+        public long passCount() {
+            return passes.sum();
+        }
+
+        // Fraction of checked inputs that contained a literal and went on to the automaton
+        public double hitRate() {
+            long total = checks.sum();
+            return total == 0 ? 0 : (double) passes.sum() / total;
+        }
+
+        private boolean contains(CharSequence input) {
+            if (literals.length == 1 && input instanceof String) {
+                return ((String) input).contains(literals[0]);
+            }
+            for (int i = 0; i < input.length(); i++) {
+                int col = input.charAt(i) - minChar;
+                if (col < 0 || col >= width || byFirst[col] == null) {
+                    continue;
+                }
+                for (String s : byFirst[col]) {
+                    if (startsWith(input, i, s)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean startsWith(CharSequence input, int at, String s) {
+            if (at + s.length() > input.length()) {
+                return false;
+            }
+            for (int k = 1; k < s.length(); k++) {
+                if (input.charAt(at + k) != s.charAt(k)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Bottom-up over an explicit post-order, tracking per node the exact strings it matches
+        // (when few enough) and a set at least one of which occurs in every match. Reversed
+        // pre-order visits operands left to right before their node, so results live on two
+        // stacks and each node takes its operands' off the top.
+        private static Set<String> analyze(Node root) {
+            ArrayList<Node> order = new ArrayList<>();
+            ArrayDeque<Node> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Node node = pending.pop();
+                order.add(node);
+                for (Node child : node.children) {
+                    pending.push(child);
+                }
+            }
+            ArrayList<Set<String>> exact = new ArrayList<>();
+            ArrayList<Set<String>> required = new ArrayList<>();
+            for (int i = order.size() - 1; i >= 0; i--) {
+                Node node = order.get(i);
+                int base = exact.size() - node.children.length;
+                Set<String> ex = null, req = null;
+                if (node.kind == Node.LITERAL) {
+                    ex = Collections.singleton(String.valueOf(node.c));
+                } else if (node.kind == Node.CLASS) {
+                    // A small class is as good as a union of its chars
+                    int size = 0;
+                    for (int k = 0; k < node.ranges.length; k += 2) {
+                        size += node.ranges[k + 1] - node.ranges[k] + 1;
+                    }
+                    if (size > 0 && size <= MAX_LITERALS) {
+                        ex = new HashSet<>();
+                        for (int k = 0; k < node.ranges.length; k += 2) {
+                            for (char c = node.ranges[k]; c <= node.ranges[k + 1]; c++) {
+                                ex.add(String.valueOf(c));
+                            }
+                        }
+                    }
+                } else if (node.kind == Node.GROUP) {
+                    ex = exact.get(base);
+                    req = required.get(base);
+                } else if (node.kind == Node.OPTIONAL) {
+                    // x? may be empty, so it requires nothing but its exact strings gain ""
+                    ex = union(new HashSet<>(Collections.singleton("")), exact.get(base));
+                } else if (node.kind == Node.PLUS) {
+                    // x+ contains x, while x* may be empty and requires nothing
+                    req = required.get(base);
+                } else if (node.kind == Node.UNION) {
+                    ex = new HashSet<>();
+                    req = new HashSet<>();
+                    for (int k = base; k < exact.size(); k++) {
+                        ex = union(ex, exact.get(k));
+                        req = union(req, required.get(k));
+                    }
+                } else if (node.kind == Node.CONCAT) {
+                    // Adjacent exact operands multiply into longer literals; anything else, or a
+                    // literal reaching MAX_LITERAL_LENGTH, ends the run
+                    Set<String> run = Collections.singleton("");
+                    boolean whole = true;
+                    for (int k = base; k < exact.size(); k++) {
+                        Set<String> product = product(run, exact.get(k));
+                        if (product != null) {
+                            run = product;
+                            continue;
+                        }
+                        whole = false;
+                        req = better(req, nonEmpty(run));
+                        req = better(req, required.get(k));
+                        run = exact.get(k) != null ? exact.get(k) : Collections.singleton("");
+                    }
+                    ex = whole ? run : null;
+                    req = better(req, nonEmpty(run));
+                }
+                exact.subList(base, exact.size()).clear();
+                required.subList(base, required.size()).clear();
+                exact.add(ex);
+                required.add(better(req, nonEmpty(ex)));
+            }
+            return required.get(0);
+        }
+
+        private static Set<String> union(Set<String> a, Set<String> b) {
+            if (a == null || b == null || a.size() + b.size() > MAX_LITERALS) {
+                return null;
+            }
+            a.addAll(b);
+            return a;
+        }
+
+        private static Set<String> product(Set<String> a, Set<String> b) {
+            if (b == null || (long) a.size() * b.size() > MAX_LITERALS) {
+                return null;
+            }
+            if (a.size() == 1 && b.size() == 1) {
+                // The common case, a run of plain literals
+                String x = a.iterator().next(), y = b.iterator().next();
+                return x.length() + y.length() > MAX_LITERAL_LENGTH ? null
+                        : Collections.singleton(new StringBuilder(x.length() + y.length()).append(x).append(y).toString());
+            }
+            Set<String> result = new HashSet<>();
+            StringBuilder sb = new StringBuilder(MAX_LITERAL_LENGTH);
+            for (String x : a) {
+                for (String y : b) {
+                    if (x.length() + y.length() > MAX_LITERAL_LENGTH) {
+                        return null;
+                    }
+                    sb.setLength(0);
+                    result.add(sb.append(x).append(y).toString());
+                }
+            }
+            return result;
+        }
+
+        private static Set<String> nonEmpty(Set<String> set) {
+            return set == null || set.contains("") ? null : set;
+        }
+
+        // Prefer the set whose shortest literal is longest, then the smaller set
+        private static Set<String> better(Set<String> a, Set<String> b) {
+            if (a == null || b == null) {
+                return a == null ? b : a;
+            }
+            int la = shortest(a), lb = shortest(b);
+            return la != lb ? (la > lb ? a : b) : (a.size() <= b.size() ? a : b);
+        }
+
+        private static int shortest(Set<String> set) {
+            int min = Integer.MAX_VALUE;
+            for (String s : set) {
+                min = Math.min(min, s.length());
+            }
+            return min;
+        }
+    }
+
+    // Growable primitive store for Thompson construction. Every state and edge is emitted exactly
+    // once, so building is linear in the pattern instead of renumbering and copying per operator.
+    static final class Arena {
+        // Bound on states and, separately, on edges
+        final int maxStates;
+        int stateCount;
+        int edgeCount;
+        int[] from = new int[16];
+        int[] to = new int[16];
+        char[] labels = new char[16];
+        char[] ends = new char[16];
+
+        Arena(int maxStates) {
+            this.maxStates = maxStates;
+        }
+
+        int newState() {
+            if (stateCount == maxStates) {
+                throw new LimitExceededException("states", maxStates, "Pattern needs more than " + maxStates + " states");
+            }
+            return stateCount++;
+        }
+
+        void edge(int f, int t, char c) {
+            edge(f, t, c, c);
+        }
+
+        void edge(int f, int t, char lo, char hi) {
+            if (edgeCount == maxStates) {
+                throw new LimitExceededException("states", maxStates, "Pattern needs more than " + maxStates + " edges");
+            }
+            if (edgeCount == from.length) {
+                from = Arrays.copyOf(from, edgeCount * 2);
+                to = Arrays.copyOf(to, edgeCount * 2);
+                labels = Arrays.copyOf(labels, edgeCount * 2);
+                ends = Arrays.copyOf(ends, edgeCount * 2);
+            }
+            from[edgeCount] = f;
+            to[edgeCount] = t;
+            ends[edgeCount] = hi;
+            labels[edgeCount++] = lo;
+        }
+
+        // Emits node starting from entry and returns its exit state. Concatenation threads each
+        // operand's exit into the next operand's entry, so it costs no extra states; loops always
+        // get a fresh head state, which keeps back edges from leaking into neighbouring operands.
+        int emit(Node root, int entry) {
+            ArrayDeque<Frame> stack = new ArrayDeque<>();
+            stack.push(new Frame(root, entry));
+            int exit = entry;
+            while (!stack.isEmpty()) {
+                Frame f = stack.peek();
+                Node n = f.node;
+                switch (n.kind) {
+                    case Node.LITERAL:
+                        exit = newState();
+                        edge(f.entry, exit, n.c);
+                        stack.pop();
+                        break;
+                    case Node.CLASS:
+                        // One edge per range, however many chars it holds
+                        exit = newState();
+                        for (int k = 0; k < n.ranges.length; k += 2) {
+                            edge(f.entry, exit, n.ranges[k], n.ranges[k + 1]);
+                        }
+                        stack.pop();
+                        break;
+                    case Node.GROUP:
+                        // Captures are CaptureMatcher's business; the automaton reads straight through
+                        if (f.next == 0) {
+                            stack.push(new Frame(n.children[f.next++], f.entry));
+                        } else {
+                            stack.pop();
+                        }
+                        break;
+                    case Node.OPTIONAL:
+                        // A union of the operand and nothing
+                        if (f.next == 0) {
+                            f.state = newState();
+                            edge(f.entry, f.state, EPSILON);
+                            stack.push(new Frame(n.children[f.next++], f.entry));
+                        } else {
+                            edge(exit, f.state, EPSILON);
+                            exit = f.state;
+                            stack.pop();
+                        }
+                        break;
+                    case Node.CONCAT:
+                        f.state = f.next == 0 ? f.entry : exit;
+                        if (f.next < n.children.length) {
+                            stack.push(new Frame(n.children[f.next++], f.state));
+                        } else {
+                            exit = f.state;
+                            stack.pop();
+                        }
+                        break;
+                    case Node.UNION:
+                        if (f.next == 0) {
+                            f.state = newState();
+                        } else {
+                            edge(exit, f.state, EPSILON);
+                        }
+                        if (f.next < n.children.length) {
+                            stack.push(new Frame(n.children[f.next++], f.entry));
+                        } else {
+                            exit = f.state;
+                            stack.pop();
+                        }
+                        break;
+                    default:
+                        // STAR and PLUS: loop the operand back to a fresh head; STAR leaves from
+                        // the head so zero iterations work, PLUS only after the operand
+                        if (f.next == 0) {
+                            f.state = newState();
+                            edge(f.entry, f.state, EPSILON);
+                            stack.push(new Frame(n.children[f.next++], f.state));
+                        } else {
+                            edge(exit, f.state, EPSILON);
+                            if (n.kind == Node.STAR) {
+                                exit = f.state;
+                            }
+                            stack.pop();
+                        }
+                        break;
+                }
+            }
+            return exit;
+        }
+
+        ENFA toENFA(int start, int accept) {
+            ENFA enfa = new ENFA(stateCount);
+            enfa.start = start;
+            enfa.accept = accept;
+            enfa.transitions.ensureCapacity(edgeCount);
+            for (int i = 0; i < edgeCount; i++) {
+                enfa.transitions.add(new Transition(from[i], to[i], labels[i], ends[i]));
+            }
+            return enfa;
+        }
+
+        private static final class Frame {
+            final Node node;
+            final int entry;
+            int next;
+            int state;
+
+            Frame(Node node, int entry) {
+                this.node = node;
+                this.entry = entry;
+            }
+        }
+    }
+
+    public static boolean isAccepted(ENFA enfa, String input) {
+        if (Metrics.enabled) {
+            return isAccepted(enfa.compiled(), input);
+        }
+        // Checked before compiling, so rejected lines cost only the literal scan
+        if (enfa.prefilter != null && !enfa.prefilter.test(input)) {
+            return false;
+        }
+        return accepts(enfa.compiled(), input);
+    }
+
+    public static boolean isAccepted(CompiledENFA nfa, String input) {
+        if (Metrics.enabled) {
+            MatchEvent event = Metrics.beginMatch();
+            boolean matched = (nfa.prefilter == null || nfa.prefilter.test(input)) && accepts(nfa, input);
+            Metrics.endMatch(event, nfa, input, matched, "isAccepted");
+            return matched;
+        }
+        if (nfa.prefilter != null && !nfa.prefilter.test(input)) {
+            return false;
+        }
+        return accepts(nfa, input);
+    }
+
+    // Allocates a Matcher per call; keep one per thread to match many inputs under the same limits
+    public static boolean isAccepted(CompiledENFA nfa, String input, Limits limits) {
+        return nfa.matcher(limits).matches(input);
+    }
+
+    private static boolean accepts(CompiledENFA nfa, String input) {
+        if (nfa.glushkov != null) {
+            return nfa.glushkov.matches(input);
+        }
+        if (nfa.closures != null) {
+            return isAcceptedByClosures(nfa, input);
+        }
+        int[] current = new int[nfa.stateCount];
+        int[] next = new int[nfa.stateCount];
+        int[] mark = new int[nfa.stateCount];
+        int gen = 1;
+        int size = nfa.addClosure(nfa.start, current, 0, mark, gen);
+        for (int i = 0; i < input.length() && size > 0; i++) {
+            size = nfa.step(current, size, input.charAt(i), next, mark, ++gen);
+            int[] tmp = current;
+            current = next;
+            next = tmp;
+        }
+        for (int k = 0; k < size; k++) {
+            if (current[k] == nfa.accept) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Bitset simulation: each step ORs together the precomputed closures of the targets
+    private static boolean isAcceptedByClosures(CompiledENFA nfa, String input) {
+        int words = nfa.words;
+        long[] closures = nfa.closures;
+        long[] current = Arrays.copyOfRange(closures, nfa.start * words, (nfa.start + 1) * words);
+        long[] next = new long[words];
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            boolean alive = false;
+            Arrays.fill(next, 0);
+            for (int w = 0; w < words; w++) {
+                for (long bits = current[w]; bits != 0; bits &= bits - 1) {
+                    int s = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    for (int e = nfa.offsets[s + 1] - 1; e >= nfa.offsets[s] && nfa.labels[e] != CompiledENFA.EPSILON_EDGE; e--) {
+                        if (nfa.labels[e] <= c && c <= nfa.ends[e]) {
+                            int base = nfa.targets[e] * words;
+                            for (int k = 0; k < words; k++) {
+                                next[k] |= closures[base + k];
+                            }
+                            alive = true;
+                        }
+                    }
+                }
+            }
+            if (!alive) {
+                return false;
+            }
+            long[] tmp = current;
+            current = next;
+            next = tmp;
+        }
+        return (current[nfa.accept >>> 6] & (1L << nfa.accept)) != 0;
+    }
+
+    // Reusable simulator bound to one CompiledENFA. Current and next state sets are preallocated
+    // sparse sets and closures use a preallocated stack, so matches allocates nothing once built.
+    // Not thread-safe; give each thread its own Matcher.
+    public static final class Matcher {
+        final CompiledENFA nfa;
+        final Limits limits;
+        private SparseSet current;
+        private SparseSet next;
+        private final int[] stack;
+
+        public Matcher(CompiledENFA nfa) {
+            this(nfa, Limits.DEFAULT);
+        }
+
+        // Throws LimitExceededException from matches when one match goes over the step or time budget
+        public Matcher(CompiledENFA nfa, Limits limits) {
+            this.nfa = nfa;
+            this.limits = limits;
+            this.current = new SparseSet(nfa.stateCount);
+            this.next = new SparseSet(nfa.stateCount);
+            this.stack = new int[nfa.stateCount];
+        }
+
+        public boolean matches(CharSequence input) {
+            if (Metrics.enabled) {
+                MatchEvent event = Metrics.beginMatch();
+                boolean matched = match(input);
+                Metrics.endMatch(event, nfa, input, matched, "Matcher");
+                return matched;
+            }
+            return match(input);
+        }
+
+        private boolean match(CharSequence input) {
+            if (nfa.prefilter != null && !nfa.prefilter.test(input)) {
+                return false;
+            }
+            if (nfa.glushkov != null) {
+                // One bit-parallel step per char, too quick for the clock to matter
+                limits.check(input.length(), 1, 0);
+                return nfa.glushkov.matches(input);
+            }
+            int[] offsets = nfa.offsets, targets = nfa.targets, labels = nfa.labels, ends = nfa.ends;
+            current.clear();
+            addClosure(nfa.start, current);
+            long steps = 0, begin = limits.begin();
+            for (int i = 0; i < input.length() && current.size > 0; i++) {
+                steps += current.size;
+                limits.check(steps, i, begin);
+                char c = input.charAt(i);
+                next.clear();
+                for (int k = 0; k < current.size; k++) {
+                    int s = current.dense[k];
+                    for (int e = offsets[s + 1] - 1; e >= offsets[s] && labels[e] != CompiledENFA.EPSILON_EDGE; e--) {
+                        if (labels[e] <= c && c <= ends[e]) {
+                            addClosure(targets[e], next);
+                        }
+                    }
+                }
+                SparseSet tmp = current;
+                current = next;
+                next = tmp;
+            }
+            return current.contains(nfa.accept);
+        }
+
+        private void addClosure(int state, SparseSet set) {
+            if (set.contains(state)) {
+                return;
+            }
+            set.add(state);
+            int top = 0;
+            stack[top++] = state;
+            while (top > 0) {
+                int s = stack[--top];
+                for (int e = nfa.offsets[s]; e < nfa.offsets[s + 1] && nfa.labels[e] == CompiledENFA.EPSILON_EDGE; e++) {
+                    int t = nfa.targets[e];
+                    if (!set.contains(t)) {
+                        set.add(t);
+                        stack[top++] = t;
+                    }
+                }
+            }
+        }
+    }
+
+    // Briggs-Torczon sparse set: O(1) add, contains and clear without touching the whole universe
+    private static final class SparseSet {
+        final int[] dense;
+        final int[] sparse;
+        int size;
+
+        SparseSet(int capacity) {
+            this.dense = new int[capacity];
+            this.sparse = new int[capacity];
+        }
+
+        boolean contains(int x) {
+            int i = sparse[x];
+            return i < size && dense[i] == x;
+        }
+
+        void add(int x) {
+            sparse[x] = size;
+            dense[size++] = x;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    // Submatch extraction by Pike VM. The parse tree compiles to a program of CHAR, SPLIT, JMP,
+    // SAVE and MATCH instructions, and all threads advance one char at a time in priority order,
+    // each carrying its own capture slots. The first thread at MATCH when the input ends holds the
+    // spans java.util.regex's matches() would report, found in O(program * slots) per char with
+    // no backtracking. One difference, shared with RE2: a loop whose operand can match nothing
+    // ends at its last iteration that read a char, where java.util.regex records one more, empty,
+    // iteration. Patterns where no two threads can ever read the same char are one-pass; for them
+    // a table follows the single live thread instead. Not thread-safe; give each thread its own.
+    public static final class CaptureMatcher {
+        // Larger programs skip the one-pass analysis, which is quadratic in program size
+        static final int MAX_ONE_PASS = 1024;
+        private static final int CHAR = 0;
+        private static final int MATCH = 1;
+        private static final int SPLIT = 2;
+        private static final int JMP = 3;
+        private static final int SAVE = 4;
+
+        // SPLIT tries x before y and JMP goes to x; SAVE records the position in slot x and CHAR
+        // reads one of ranges, both then going on to the next instruction
+        final int[] op;
+        final int[] x;
+        final int[] y;
+        final char[][] ranges;
+        final int groups;
+        final int slots;
+        final Prefilter prefilter;
+        final Limits limits;
+        // One-pass table, null when the pattern is not one-pass. Entering the closure at pc, the
+        // rows [passOffsets[pc], passOffsets[pc + 1]) are disjoint ranges sorted by lo, each with
+        // the CHAR that reads it and the slots saved on the way there, as a count-prefixed list
+        // in passSaves. passMatch[pc] is the same for the path to MATCH, or -1.
+        private final int[] passOffsets;
+        private final char[] passLo;
+        private final char[] passHi;
+        private final int[] passChar;
+        private final int[] passSlots;
+        private final int[] passMatch;
+        private final int[] passSaves;
+
+        private SparseSet current;
+        private SparseSet next;
+        // Slots of the thread at dense index k of current are at [k * slots, (k + 1) * slots)
+        private int[] currentSlots;
+        private int[] nextSlots;
+        private final int[] work;
+        private final int[] mark;
+        private final int[] stack;
+        private final int[] saved;
+        private int generation;
+
+        private CaptureMatcher(Assembler asm, int groups, Prefilter prefilter, Limits limits) {
+            this.op = Arrays.copyOf(asm.op, asm.size);
+            this.x = Arrays.copyOf(asm.x, asm.size);
+            this.y = Arrays.copyOf(asm.y, asm.size);
+            this.ranges = Arrays.copyOf(asm.ranges, asm.size);
+            this.groups = groups;
+            this.slots = 2 * (groups + 1);
+            this.prefilter = prefilter;
+            this.limits = limits;
+            int n = op.length;
+            this.current = new SparseSet(n);
+            this.next = new SparseSet(n);
+            this.currentSlots = new int[n * slots];
+            this.nextSlots = new int[n * slots];
+            this.work = new int[slots];
+            this.mark = new int[n];
+            // Every pc is expanded at most once per step and pushes at most two entries
+            this.stack = new int[2 * n + 1];
+            this.saved = new int[2 * n + 1];
+            OnePass table = n <= MAX_ONE_PASS ? onePass() : null;
+            this.passOffsets = table == null ? null : table.offsets;
+            this.passLo = table == null ? null : table.lo;
+            this.passHi = table == null ? null : table.hi;
+            this.passChar = table == null ? null : table.chars;
+            this.passSlots = table == null ? null : table.slots;
+            this.passMatch = table == null ? null : table.match;
+            this.passSaves = table == null ? null : table.saves;
+        }
+
+        // Null when enfa did not come from isInputValid, so there are no groups to report
+        public static CaptureMatcher of(ENFA enfa) {
+            return of(enfa, Limits.DEFAULT);
+        }
+
+        // match throws LimitExceededException when one match goes over the step or time budget
+        public static CaptureMatcher of(ENFA enfa, Limits limits) {
+            if (enfa.tree == null) {
+                return null;
+            }
+            Assembler asm = new Assembler();
+            asm.emit(SAVE, 0, 0, null);
+            asm.compile(enfa.tree);
+            asm.emit(SAVE, 1, 0, null);
+            asm.emit(MATCH, 0, 0, null);
+            return new CaptureMatcher(asm, enfa.groups, enfa.prefilter, limits);
+        }
+
+        public int groupCount() {
+            return groups;
+        }
+
+        public boolean isOnePass() {
+            return passOffsets != null;
+        }
+
+        // Start and end of the whole match and then of each group, -1 for a group that took no
+        // part in it; a group matched more than once keeps its last span. Null on no match.
+        public int[] match(CharSequence input) {
+            if (prefilter != null && !prefilter.test(input)) {
+                return null;
+            }
+            if (passOffsets != null) {
+                // One table lookup per char, too quick for the clock to matter
+                limits.check(input.length(), 1, 0);
+                return followOnePass(input);
+            }
+            return simulate(input);
+        }
+
+        // Text of the whole match and each group, null for groups that took no part
+        public String[] extract(CharSequence input) {
+            int[] spans = match(input);
+            if (spans == null) {
+                return null;
+            }
+            String[] text = new String[groups + 1];
+            for (int g = 0; g <= groups; g++) {
+                text[g] = spans[2 * g] < 0 ? null : input.subSequence(spans[2 * g], spans[2 * g + 1]).toString();
+            }
+            return text;
+        }
+
+        private int[] simulate(CharSequence input) {
+            current.clear();
+            Arrays.fill(work, -1);
+            generation++;
+            add(current, currentSlots, 0, 0);
+            long steps = 0, begin = limits.begin();
+            for (int i = 0; i < input.length() && current.size > 0; i++) {
+                steps += current.size;
+                limits.check(steps, i, begin);
+                char c = input.charAt(i);
+                next.clear();
+                generation++;
+                for (int k = 0; k < current.size; k++) {
+                    int pc = current.dense[k];
+                    if (op[pc] == CHAR && reads(ranges[pc], c)) {
+                        System.arraycopy(currentSlots, k * slots, work, 0, slots);
+                        add(next, nextSlots, pc + 1, i + 1);
+                    }
+                }
+                SparseSet tmp = current;
+                current = next;
+                next = tmp;
+                int[] swap = currentSlots;
+                currentSlots = nextSlots;
+                nextSlots = swap;
+            }
+            for (int k = 0; k < current.size; k++) {
+                if (op[current.dense[k]] == MATCH) {
+                    return Arrays.copyOfRange(currentSlots, k * slots, (k + 1) * slots);
+                }
+            }
+            return null;
+        }
+
+        // Follows SPLIT, JMP and SAVE from pc with the slots in work, appending each CHAR and MATCH
+        // reached to list in priority order. A pc already reached this step belongs to a thread of
+        // higher priority, so it is skipped; that also ends loops that read nothing.
+        private void add(SparseSet list, int[] listSlots, int pc, int position) {
+            int top = 0;
+            stack[top++] = pc;
+            while (top > 0) {
+                int at = stack[--top];
+                if (at < 0) {
+                    // Undo a SAVE once the branch that made it is done
+                    work[-at - 1] = saved[top];
+                    continue;
+                }
+                if (mark[at] == generation) {
+                    continue;
+                }
+                mark[at] = generation;
+                switch (op[at]) {
+                    case SPLIT:
+                        stack[top++] = y[at];
+                        stack[top++] = x[at];
+                        break;
+                    case JMP:
+                        stack[top++] = x[at];
+                        break;
+                    case SAVE:
+                        saved[top] = work[x[at]];
+                        stack[top++] = -x[at] - 1;
+                        work[x[at]] = position;
+                        stack[top++] = at + 1;
+                        break;
+                    default:
+                        System.arraycopy(work, 0, listSlots, list.size * slots, slots);
+                        list.add(at);
+                        break;
+                }
+            }
+        }
+
+        private int[] followOnePass(CharSequence input) {
+            int[] spans = new int[slots];
+            Arrays.fill(spans, -1);
+            int pc = 0;
+            for (int i = 0; i < input.length(); i++) {
+                char c = input.charAt(i);
+                // Binary search for the row whose range holds c
+                int lo = passOffsets[pc], hi = passOffsets[pc + 1] - 1, row = -1;
+                while (lo <= hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (c < passLo[mid]) {
+                        hi = mid - 1;
+                    } else if (c > passHi[mid]) {
+                        lo = mid + 1;
+                    } else {
+                        row = mid;
+                        break;
+                    }
+                }
+                if (row < 0) {
+                    return null;
+                }
+                save(spans, passSlots[row], i);
+                pc = passChar[row] + 1;
+            }
+            if (passMatch[pc] < 0) {
+                return null;
+            }
+            save(spans, passMatch[pc], input.length());
+            return spans;
+        }
+
+        private void save(int[] spans, int list, int position) {
+            for (int k = list + 1; k <= list + passSaves[list]; k++) {
+                spans[passSaves[k]] = position;
+            }
+        }
+
+        private static boolean reads(char[] ranges, char c) {
+            for (int k = 0; k < ranges.length && ranges[k] <= c; k += 2) {
+                if (c <= ranges[k + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static final class OnePass {
+            final int[] offsets;
+            final char[] lo;
+            final char[] hi;
+            final int[] chars;
+            final int[] slots;
+            final int[] match;
+            final int[] saves;
+
+            OnePass(int[] offsets, char[] lo, char[] hi, int[] chars, int[] slots, int[] match, int[] saves) {
+                this.offsets = offsets;
+                this.lo = lo;
+                this.hi = hi;
+                this.chars = chars;
+                this.slots = slots;
+                this.match = match;
+                this.saves = saves;
+            }
+        }
+
+        // Walks the closure entered at the start and after every CHAR the way add does, keeping
+        // the slots saved along each path. Null as soon as two CHARs in one closure share a char,
+        // since then which one the thread should take depends on input not yet read.
+        private OnePass onePass() {
+            int n = op.length;
+            int[] offsets = new int[n + 1];
+            int[] match = new int[n];
+            Arrays.fill(match, -1);
+            int rows = 0;
+            char[] lo = new char[16], hi = new char[16];
+            int[] chars = new int[16], rowSlots = new int[16];
+            int[] saves = new int[16];
+            int savesSize = 0;
+            int[] path = new int[n];
+            long[] order = new long[16];
+            for (int pc = 0; pc < n; pc++) {
+                offsets[pc] = rows;
+                if (pc > 0 && op[pc - 1] != CHAR) {
+                    continue;
+                }
+                generation++;
+                int top = 0, depth = 0, first = rows;
+                stack[top++] = pc;
+                while (top > 0) {
+                    int at = stack[--top];
+                    if (at < 0) {
+                        depth--;
+                        continue;
+                    }
+                    if (mark[at] == generation) {
+                        continue;
+                    }
+                    mark[at] = generation;
+                    if (op[at] == SPLIT) {
+                        stack[top++] = y[at];
+                        stack[top++] = x[at];
+                    } else if (op[at] == JMP) {
+                        stack[top++] = x[at];
+                    } else if (op[at] == SAVE) {
+                        stack[top++] = -1;
+                        path[depth++] = x[at];
+                        stack[top++] = at + 1;
+                    } else {
+                        if (savesSize + depth + 1 > saves.length) {
+                            saves = Arrays.copyOf(saves, 2 * (savesSize + depth + 1));
+                        }
+                        int list = savesSize;
+                        saves[savesSize++] = depth;
+                        System.arraycopy(path, 0, saves, savesSize, depth);
+                        savesSize += depth;
+                        if (op[at] == MATCH) {
+                            match[pc] = list;
+                            continue;
+                        }
+                        for (int k = 0; k < ranges[at].length; k += 2) {
+                            if (rows == lo.length) {
+                                lo = Arrays.copyOf(lo, 2 * rows);
+                                hi = Arrays.copyOf(hi, 2 * rows);
+                                chars = Arrays.copyOf(chars, 2 * rows);
+                                rowSlots = Arrays.copyOf(rowSlots, 2 * rows);
+                            }
+                            lo[rows] = ranges[at][k];
+                            hi[rows] = ranges[at][k + 1];
+                            chars[rows] = at;
+                            rowSlots[rows++] = list;
+                        }
+                    }
+                }
+                // Sort this closure's rows by lo and reject any overlap
+                int count = rows - first;
+                if (order.length < count) {
+                    order = new long[2 * count];
+                }
+                for (int r = 0; r < count; r++) {
+                    order[r] = (long) lo[first + r] << 32 | r;
+                }
+                Arrays.sort(order, 0, count);
+                char[] sortedLo = new char[count], sortedHi = new char[count];
+                int[] sortedChars = new int[count], sortedSlots = new int[count];
+                for (int r = 0; r < count; r++) {
+                    int from = first + (int) order[r];
+                    sortedLo[r] = lo[from];
+                    sortedHi[r] = hi[from];
+                    sortedChars[r] = chars[from];
+                    sortedSlots[r] = rowSlots[from];
+                    if (r > 0 && sortedLo[r] <= sortedHi[r - 1]) {
+                        return null;
+                    }
+                }
+                System.arraycopy(sortedLo, 0, lo, first, count);
+                System.arraycopy(sortedHi, 0, hi, first, count);
+                System.arraycopy(sortedChars, 0, chars, first, count);
+                System.arraycopy(sortedSlots, 0, rowSlots, first, count);
+            }
+            offsets[n] = rows;
+            return new OnePass(offsets, Arrays.copyOf(lo, rows), Arrays.copyOf(hi, rows),
+                    Arrays.copyOf(chars, rows), Arrays.copyOf(rowSlots, rows), match, Arrays.copyOf(saves, savesSize));
+        }
+
+        // Emits the program for a parse tree with an explicit stack, like Arena.emit
+        private static final class Assembler {
+            int size;
+            int[] op = new int[16];
+            int[] x = new int[16];
+            int[] y = new int[16];
+            char[][] ranges = new char[16][];
+
+            int emit(int code, int a, int b, char[] read) {
+                if (size == op.length) {
+                    op = Arrays.copyOf(op, 2 * size);
+                    x = Arrays.copyOf(x, 2 * size);
+                    y = Arrays.copyOf(y, 2 * size);
+                    ranges = Arrays.copyOf(ranges, 2 * size);
+                }
+                op[size] = code;
+                x[size] = a;
+                y[size] = b;
+                ranges[size] = read;
+                return size++;
+            }
+
+            void compile(Node root) {
+                ArrayDeque<Frame> stack = new ArrayDeque<>();
+                stack.push(new Frame(root));
+                while (!stack.isEmpty()) {
+                    Frame f = stack.peek();
+                    Node n = f.node;
+                    switch (n.kind) {
+                        case Node.LITERAL:
+                            emit(CHAR, 0, 0, new char[] {n.c, n.c});
+                            stack.pop();
+                            break;
+                        case Node.CLASS:
+                            emit(CHAR, 0, 0, n.ranges);
+                            stack.pop();
+                            break;
+                        case Node.GROUP:
+                            if (f.next++ == 0) {
+                                emit(SAVE, 2 * n.group, 0, null);
+                                stack.push(new Frame(n.children[0]));
+                            } else {
+                                emit(SAVE, 2 * n.group + 1, 0, null);
+                                stack.pop();
+                            }
+                            break;
+                        case Node.CONCAT:
+                            if (f.next < n.children.length) {
+                                stack.push(new Frame(n.children[f.next++]));
+                            } else {
+                                stack.pop();
+                            }
+                            break;
+                        case Node.UNION:
+                            // Every alternative but the last sits behind a SPLIT that prefers it
+                            // and ends in a JMP past the rest; the JMPs chain through x until
+                            // the end is known
+                            if (f.next > 0 && f.next < n.children.length) {
+                                f.pending = emit(JMP, f.pending, 0, null);
+                                y[f.split] = size;
+                            }
+                            if (f.next < n.children.length) {
+                                if (f.next < n.children.length - 1) {
+                                    f.split = emit(SPLIT, size + 1, 0, null);
+                                }
+                                stack.push(new Frame(n.children[f.next++]));
+                            } else {
+                                for (int j = f.pending; j >= 0; ) {
+                                    int previous = x[j];
+                                    x[j] = size;
+                                    j = previous;
+                                }
+                                stack.pop();
+                            }
+                            break;
+                        case Node.STAR:
+                            // Greedy: SPLIT into the operand first, which jumps back to the SPLIT
+                            if (f.next++ == 0) {
+                                f.split = emit(SPLIT, size + 1, 0, null);
+                                stack.push(new Frame(n.children[0]));
+                            } else {
+                                emit(JMP, f.split, 0, null);
+                                y[f.split] = size;
+                                stack.pop();
+                            }
+                            break;
+                        case Node.PLUS:
+                            if (f.next++ == 0) {
+                                f.split = size;
+                                stack.push(new Frame(n.children[0]));
+                            } else {
+                                emit(SPLIT, f.split, size + 1, null);
+                                stack.pop();
+                            }
+                            break;
+                        default:
+                            // OPTIONAL prefers taking the operand
+                            if (f.next++ == 0) {
+                                f.split = emit(SPLIT, size + 1, 0, null);
+                                stack.push(new Frame(n.children[0]));
+                            } else {
+                                y[f.split] = size;
+                                stack.pop();
+                            }
+                            break;
+                    }
+                }
+            }
+
+            private static final class Frame {
+                final Node node;
+                int next;
+                int split;
+                int pending = -1;
+
+                Frame(Node node) {
+                    this.node = node;
+                }
+            }
+        }
+    }
+
+    // Incremental simulator for input that arrives in chunks. State carries over between feed
+    // calls; feed returns false once no continuation can match so the caller can stop reading,
+    // and finish reports the verdict and resets for the next input. Not thread-safe.
+    public static final class StreamMatcher {
+        final CompiledENFA nfa;
+        private final GlushkovMatcher glushkov;
+        private long bits;
+        private SparseSet current;
+        private SparseSet next;
+        private final int[] stack;
+        private long consumed;
+
+        public StreamMatcher(CompiledENFA nfa) {
+            this.nfa = nfa;
+            this.glushkov = nfa.glushkov;
+            this.current = new SparseSet(nfa.stateCount);
+            this.next = new SparseSet(nfa.stateCount);
+            this.stack = new int[nfa.stateCount];
+            reset();
+        }
+
+        public void reset() {
+            bits = 1;
+            current.clear();
+            addClosure(nfa.start, current);
+            consumed = 0;
+        }
+
+        public boolean feed(char[] buf, int off, int len) {
+            Objects.checkFromIndexSize(off, len, buf.length);
+            return feed(CharBuffer.wrap(buf), off, len);
+        }
+
+        // Consumes the remaining characters of buf
+        public boolean feed(CharBuffer buf) {
+            boolean alive = feed(buf, buf.position(), buf.remaining());
+            buf.position(buf.limit());
+            return alive;
+        }
+
+        // Reads buf.get(off) .. buf.get(off + len - 1) without moving its position
+        public boolean feed(CharBuffer buf, int off, int len) {
+            Objects.checkFromIndexSize(off, len, buf.limit());
+            if (glushkov != null) {
+                return feedBits(buf, off, len);
+            }
+            int[] offsets = nfa.offsets, targets = nfa.targets, labels = nfa.labels, ends = nfa.ends;
+            for (int i = off; i < off + len && current.size > 0; i++) {
+                char c = buf.get(i);
+                next.clear();
+                for (int k = 0; k < current.size; k++) {
+                    int s = current.dense[k];
+                    for (int e = offsets[s + 1] - 1; e >= offsets[s] && labels[e] != CompiledENFA.EPSILON_EDGE; e--) {
+                        if (labels[e] <= c && c <= ends[e]) {
+                            addClosure(targets[e], next);
+                        }
+                    }
+                }
+                SparseSet tmp = current;
+                current = next;
+                next = tmp;
+                consumed++;
+            }
+            return current.size > 0;
+        }
+
+        private boolean feedBits(CharBuffer buf, int off, int len) {
+            GlushkovMatcher g = glushkov;
+            long d = bits;
+            for (int i = off; i < off + len && d != 0; i++) {
+                int col = g.classes.classOf(buf.get(i));
+                long f = 0;
+                if (col != 0) {
+                    for (int k = 0; k < g.chunks; k++) {
+                        f |= g.follow[(k << 8) + ((int) (d >>> (k << 3)) & 0xFF)];
+                    }
+                    f &= g.masks[col];
+                }
+                d = f;
+                consumed++;
+            }
+            bits = d;
+            return d != 0;
+        }
+
+        // True once no continuation of the input fed so far can match
+        public boolean isDead() {
+            return glushkov != null ? bits == 0 : current.size == 0;
+        }
+
+        // Characters consumed since the last reset; stops advancing once the match is dead
+        public long consumed() {
+            return consumed;
+        }
+
+        // Whether the input fed since the last reset matches; resets for the next input
+        public boolean finish() {
+            boolean accepted = glushkov != null ? (bits & glushkov.last) != 0 : current.contains(nfa.accept);
+            reset();
+            return accepted;
+        }
+
+        // Decodes in chunk by chunk and stops reading as soon as the match is dead
+        public boolean matches(ReadableByteChannel in, Charset charset) throws IOException {
+            reset();
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer byteBuf = ByteBuffer.allocateDirect(1 << 16);
+            CharBuffer charBuf = CharBuffer.allocate(1 << 16);
+            boolean eof = false, done = false;
+            while (!done) {
+                if (!eof) {
+                    eof = in.read(byteBuf) < 0;
+                }
+                byteBuf.flip();
+                CoderResult result = decoder.decode(byteBuf, charBuf, eof);
+                done = eof && result.isUnderflow();
+                if (done) {
+                    decoder.flush(charBuf);
+                }
+                byteBuf.compact();
+                charBuf.flip();
+                if (!feed(charBuf)) {
+                    reset();
+                    return false;
+                }
+                charBuf.clear();
+            }
+            return finish();
+        }
+
+        private void addClosure(int state, SparseSet set) {
+            if (set.contains(state)) {
+                return;
+            }
+            set.add(state);
+            int top = 0;
+            stack[top++] = state;
+            while (top > 0) {
+                int s = stack[--top];
+                for (int e = nfa.offsets[s]; e < nfa.offsets[s + 1] && nfa.labels[e] == CompiledENFA.EPSILON_EDGE; e++) {
+                    int t = nfa.targets[e];
+                    if (!set.contains(t)) {
+                        set.add(t);
+                        stack[top++] = t;
+                    }
+                }
+            }
+        }
+    }
+
+    // DFA built on demand: each state is the ENFA state set reached so far, and a transition is
+    // worked out the first time an input needs it, then read from the table. The cache holds at
+    // most cacheBytes of states; when it is full every state is dropped and building resumes from
+    // the current one. After MAX_FLUSHES_PER_MATCH flushes in one match, the rest of that input
+    // is run by NFA simulation instead. Nothing of this is remembered between calls, so a pattern
+    // that thrashes the cache pays the flushes again on every match; fallbackCount shows it.
+    // Not thread-safe; give each thread its own LazyDFA.
+    public static final class LazyDFA {
+        public static final long DEFAULT_CACHE_BYTES = 1 << 20;
+        static final int MAX_FLUSHES_PER_MATCH = 4;
+        private static final int UNKNOWN = -1;
+        private static final int DEAD = 0;
+        private static final int GIVE_UP = -2;
+
+        final CompiledENFA nfa;
+        // Pattern index accepted by each ENFA state, or -1; null for a single-pattern automaton
+        final int[] acceptTags;
+        final CharClasses classes;
+        final int columns;
+        final long cacheBytes;
+
+        private final HashMap<StateSet, Integer> ids = new HashMap<>();
+        private final ArrayList<int[]> sets = new ArrayList<>();
+        private int[] table = new int[0];
+        private boolean[] accepting = new boolean[0];
+        private int[][] tags = new int[0][];
+        private int startState;
+        private long usedBytes;
+        private int flushesThisMatch;
+        private int[] pending;
+        private long flushes;
+        private long fallbacks;
+        // Table lookups that had to build a state, and characters run through the table last match
+        private long misses;
+        private int position;
+
+        private final int[] scratch;
+        private final int[] mark;
+        private int generation;
+
+        public LazyDFA(ENFA enfa) {
+            this(enfa.compile(), DEFAULT_CACHE_BYTES);
+        }
+
+        public LazyDFA(ENFA enfa, long cacheBytes) {
+            this(enfa.compile(), cacheBytes);
+        }
+
+        public LazyDFA(CompiledENFA nfa, long cacheBytes) {
+            this(nfa, null, cacheBytes);
+        }
+
+        LazyDFA(CompiledENFA nfa, int[] acceptTags, long cacheBytes) {
+            this.nfa = nfa;
+            this.acceptTags = acceptTags;
+            this.classes = nfa.classes;
+            this.columns = classes.count;
+            this.cacheBytes = cacheBytes;
+            this.scratch = new int[nfa.stateCount];
+            this.mark = new int[nfa.stateCount];
+            reset();
+        }
+
+        public boolean matches(CharSequence input) {
+            if (Metrics.enabled) {
+                MatchEvent event = Metrics.beginMatch();
+                long missesBefore = misses;
+                boolean matched = match(input);
+                Metrics.lazyDfa(position, misses - missesBefore);
+                Metrics.endMatch(event, nfa, input, matched, "LazyDFA");
+                return matched;
+            }
+            return match(input);
+        }
+
+        private boolean match(CharSequence input) {
+            position = 0;
+            if (nfa.prefilter != null && !nfa.prefilter.test(input)) {
+                return false;
+            }
+            int s = run(input);
+            return s != GIVE_UP ? accepting[s] : Arrays.binarySearch(pending, nfa.accept) >= 0;
+        }
+
+        // Sorted indices of the tagged patterns that accept input
+        int[] matchedTags(CharSequence input) {
+            int s = run(input);
+            return s != GIVE_UP ? tags[s] : tagsOf(pending);
+        }
+
+        // Final DFA state, or GIVE_UP with the final ENFA state set left in pending
+        private int run(CharSequence input) {
+            int s = startState;
+            flushesThisMatch = 0;
+            int i = 0;
+            for (; i < input.length(); i++) {
+                if (s == DEAD) {
+                    break;
+                }
+                int col = classes.classOf(input.charAt(i));
+                if (col == 0) {
+                    s = DEAD;
+                    break;
+                }
+                int next = table[s * columns + col];
+                if (next == UNKNOWN) {
+                    misses++;
+                    next = step(s, col);
+                    if (next == GIVE_UP) {
+                        fallbacks++;
+                        position = i + 1;
+                        pending = simulate(pending, input, i + 1);
+                        return GIVE_UP;
+                    }
+                }
+                s = next;
+            }
+            position = i;
+            return s;
+        }
+
+        public int stateCount() {
+            return sets.size();
+        }
+
+        public long flushCount() {
+            return flushes;
+        }
+
+        public long fallbackCount() {
+            return fallbacks;
+        }
+
+        private int step(int s, int col) {
+            int[] target = move(sets.get(s), classes.representative[col]);
+            Integer id = ids.get(new StateSet(target));
+            if (id != null) {
+                table[s * columns + col] = id;
+                return id;
+            }
+            if (usedBytes + stateBytes(target) > cacheBytes && sets.size() > 2) {
+                // Out of budget: drop every cached state and rebuild from the target onwards
+                flushes++;
+                if (++flushesThisMatch > MAX_FLUSHES_PER_MATCH) {
+                    pending = target;
+                    return GIVE_UP;
+                }
+                reset();
+                return add(target);
+            }
+            id = add(target);
+            table[s * columns + col] = id;
+            return id;
+        }
+
+        private void reset() {
+            ids.clear();
+            sets.clear();
+            usedBytes = 0;
+            add(new int[0]);
+            Arrays.fill(table, 0, columns, DEAD);
+            int size = nfa.addClosure(nfa.start, scratch, 0, mark, nextGeneration());
+            startState = add(sorted(size));
+        }
+
+        private int add(int[] set) {
+            int id = sets.size();
+            sets.add(set);
+            ids.put(new StateSet(set), id);
+            usedBytes += stateBytes(set);
+            if (id >= accepting.length) {
+                accepting = Arrays.copyOf(accepting, Math.max(16, accepting.length * 2));
+                tags = Arrays.copyOf(tags, accepting.length);
+                table = Arrays.copyOf(table, accepting.length * columns);
+            }
+            Arrays.fill(table, id * columns, (id + 1) * columns, UNKNOWN);
+            accepting[id] = Arrays.binarySearch(set, nfa.accept) >= 0;
+            if (acceptTags != null) {
+                tags[id] = tagsOf(set);
+                usedBytes += 4L * tags[id].length;
+            }
+            return id;
+        }
+
+        private int[] tagsOf(int[] set) {
+            int count = 0;
+            for (int s : set) {
+                if (acceptTags[s] >= 0) {
+                    scratch[count++] = acceptTags[s];
+                }
+            }
+            int[] result = Arrays.copyOf(scratch, count);
+            Arrays.sort(result);
+            return result;
+        }
+
+        private long stateBytes(int[] set) {
+            return 64 + 4L * (columns + set.length);
+        }
+
+        private int[] move(int[] from, char c) {
+            return sorted(nfa.step(from, from.length, c, scratch, mark, nextGeneration()));
+        }
+
+        private int[] sorted(int size) {
+            int[] set = Arrays.copyOf(scratch, size);
+            Arrays.sort(set);
+            return set;
+        }
+
+        private int nextGeneration() {
+            if (++generation == 0) {
+                Arrays.fill(mark, 0);
+                generation = 1;
+            }
+            return generation;
+        }
+
+        // Plain NFA simulation for the rest of the input once the cache keeps thrashing
+        private int[] simulate(int[] current, CharSequence input, int from) {
+            for (int i = from; i < input.length() && current.length > 0; i++) {
+                current = move(current, input.charAt(i));
+            }
+            return current;
+        }
+    }
+
+    // Fully determinized and Hopcroft-minimized automaton with one column per char class
+    public static final class DFA {
+        static final int MAGIC = 0x52584446; // "RXDF"
+        static final int VERSION = 3;
+
+        final int stateCount;
+        final int start;
+        final CharClasses classes;
+        final int columns;
+        final int[] table;
+        final boolean[] accepting;
+        final int dead;
+
+        DFA(int stateCount, int start, CharClasses classes, int[] table, boolean[] accepting) {
+            this.stateCount = stateCount;
+            this.start = start;
+            this.classes = classes;
+            this.columns = classes.count;
+            this.table = table;
+            this.accepting = accepting;
+            this.dead = findDead();
+        }
+
+        public static DFA compile(ENFA enfa) {
+            return compile(enfa.compile());
+        }
+
+        public static DFA compile(CompiledENFA nfa) {
+            return compile(nfa, Limits.DEFAULT);
+        }
+
+        // Throws LimitExceededException once the subset states need more than limits.dfaBytes
+        public static DFA compile(CompiledENFA nfa, Limits limits) {
+            return determinize(nfa, limits.dfaBytes).minimize();
+        }
+
+        public int stateCount() {
+            return stateCount;
+        }
+
+        public boolean matches(CharSequence input) {
+            int s = start;
+            for (int i = 0; i < input.length(); i++) {
+                if (s == dead) {
+                    return false;
+                }
+                s = table[s * columns + classes.classOf(input.charAt(i))];
+            }
+            return accepting[s];
+        }
+
+        // Subset construction over every char class, visiting only reachable state sets. States are
+        // charged the bytes LazyDFA counts for them, and going over maxBytes gives up.
+        static DFA determinize(CompiledENFA nfa, long maxBytes) {
+            CharClasses classes = nfa.classes;
+            int columns = classes.count;
+            int[] scratch = new int[nfa.stateCount];
+            int[] mark = new int[nfa.stateCount];
+            int gen = 1;
+            HashMap<StateSet, Integer> ids = new HashMap<>();
+            ArrayList<int[]> sets = new ArrayList<>();
+            int size = nfa.addClosure(nfa.start, scratch, 0, mark, gen);
+            int[] first = Arrays.copyOf(scratch, size);
+            Arrays.sort(first);
+            ids.put(new StateSet(first), 0);
+            sets.add(first);
+            long bytes = 64 + 4L * (columns + first.length);
+            int[] table = new int[Math.max(16 * columns, 1)];
+            for (int s = 0; s < sets.size(); s++) {
+                if ((s + 1) * columns > table.length) {
+                    table = Arrays.copyOf(table, table.length * 2);
+                }
+                int[] from = sets.get(s);
+                for (int col = 0; col < columns; col++) {
+                    size = nfa.step(from, from.length, classes.representative[col], scratch, mark, ++gen);
+                    int[] target = Arrays.copyOf(scratch, size);
+                    Arrays.sort(target);
+                    StateSet key = new StateSet(target);
+                    Integer id = ids.get(key);
+                    if (id == null) {
+                        bytes += 64 + 4L * (columns + target.length);
+                        if (bytes > maxBytes) {
+                            throw new LimitExceededException("dfaBytes", maxBytes, "DFA needs more than " + maxBytes + " bytes");
+                        }
+                        id = sets.size();
+                        ids.put(key, id);
+                        sets.add(target);
+                    }
+                    table[s * columns + col] = id;
+                }
+            }
+            boolean[] accepting = new boolean[sets.size()];
+            for (int s = 0; s < sets.size(); s++) {
+                accepting[s] = Arrays.binarySearch(sets.get(s), nfa.accept) >= 0;
+            }
+            return new DFA(sets.size(), 0, classes, Arrays.copyOf(table, sets.size() * columns), accepting);
+        }
+
+        // Hopcroft partition refinement; block ids become the state ids of the result
+        DFA minimize() {
+            int n = stateCount, k = columns;
+            int[] predStart = new int[k * n + 1];
+            for (int s = 0; s < n; s++) {
+                for (int a = 0; a < k; a++) {
+                    predStart[a * n + table[s * k + a] + 1]++;
+                }
+            }
+            for (int i = 0; i < k * n; i++) {
+                predStart[i + 1] += predStart[i];
+            }
+            int[] preds = new int[n * k];
+            int[] fill = Arrays.copyOf(predStart, k * n);
+            for (int s = 0; s < n; s++) {
+                for (int a = 0; a < k; a++) {
+                    preds[fill[a * n + table[s * k + a]]++] = s;
+                }
+            }
+
+            int[] elems = new int[n], loc = new int[n], blockOf = new int[n];
+            int[] first = new int[n], end = new int[n], marked = new int[n];
+            int blocks = 0, pos = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                int begin = pos;
+                for (int s = 0; s < n; s++) {
+                    if (accepting[s] == (pass == 0)) {
+                        elems[pos] = s;
+                        loc[s] = pos++;
+                        blockOf[s] = blocks;
+                    }
+                }
+                if (pos > begin) {
+                    first[blocks] = begin;
+                    end[blocks++] = pos;
+                }
+            }
+
+            boolean[] waiting = new boolean[n * Math.max(k, 1)];
+            int[] work = new int[n * Math.max(k, 1)];
+            int workSize = 0;
+            if (blocks == 2) {
+                int smaller = end[0] - first[0] <= end[1] - first[1] ? 0 : 1;
+                for (int a = 0; a < k; a++) {
+                    waiting[smaller * k + a] = true;
+                    work[workSize++] = smaller * k + a;
+                }
+            }
+            int[] splitter = new int[n], touched = new int[n];
+            while (workSize > 0) {
+                int item = work[--workSize];
+                waiting[item] = false;
+                int b = item / k, a = item % k;
+                int m = end[b] - first[b];
+                System.arraycopy(elems, first[b], splitter, 0, m);
+                int touchedCount = 0;
+                for (int i = 0; i < m; i++) {
+                    int t = splitter[i];
+                    for (int j = predStart[a * n + t]; j < predStart[a * n + t + 1]; j++) {
+                        int p = preds[j], pb = blockOf[p];
+                        int mpos = first[pb] + marked[pb];
+                        if (loc[p] >= mpos) {
+                            if (marked[pb] == 0) {
+                                touched[touchedCount++] = pb;
+                            }
+                            int other = elems[mpos];
+                            elems[loc[p]] = other;
+                            loc[other] = loc[p];
+                            elems[mpos] = p;
+                            loc[p] = mpos;
+                            marked[pb]++;
+                        }
+                    }
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    int pb = touched[i];
+                    int count = marked[pb];
+                    marked[pb] = 0;
+                    if (count == end[pb] - first[pb]) {
+                        continue;
+                    }
+                    int nb = blocks++;
+                    first[nb] = first[pb];
+                    end[nb] = first[pb] + count;
+                    first[pb] = end[nb];
+                    for (int j = first[nb]; j < end[nb]; j++) {
+                        blockOf[elems[j]] = nb;
+                    }
+                    for (int c = 0; c < k; c++) {
+                        int add = waiting[pb * k + c] || count < end[pb] - first[pb] ? nb : pb;
+                        waiting[add * k + c] = true;
+                        work[workSize++] = add * k + c;
+                    }
+                }
+            }
+
+            int[] minTable = new int[blocks * k];
+            boolean[] minAccepting = new boolean[blocks];
+            for (int b = 0; b < blocks; b++) {
+                int rep = elems[first[b]];
+                minAccepting[b] = accepting[rep];
+                for (int a = 0; a < k; a++) {
+                    minTable[b * k + a] = blockOf[table[rep * k + a]];
+                }
+            }
+            return new DFA(blocks, blockOf[start], classes, minTable, minAccepting);
+        }
+
+        private int findDead() {
+            for (int s = 0; s < stateCount; s++) {
+                if (!accepting[s]) {
+                    int a = 0;
+                    while (a < columns && table[s * columns + a] == s) {
+                        a++;
+                    }
+                    if (a == columns) {
+                        return s;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        // Layout: magic, version, stateCount, start, minChar, class map length, class count, class
+        // above the map, entry size in bytes, the class map as chars, accepting bitset, then the
+        // table with each entry in the smallest size that fits
+        public void save(Path path) throws IOException {
+            int entryBytes = stateCount <= 0x100 ? 1 : stateCount <= 0x10000 ? 2 : 4;
+            int acceptBytes = (stateCount + 7) >>> 3;
+            char[] classOf = classes.classOf;
+            ByteBuffer buf = ByteBuffer.allocate(36 + 2 * classOf.length + acceptBytes + table.length * entryBytes);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(stateCount).putInt(start).putInt(classes.minChar)
+                    .putInt(classOf.length).putInt(columns).putInt(classes.above).putInt(entryBytes);
+            buf.asCharBuffer().put(classOf);
+            buf.position(buf.position() + 2 * classOf.length);
+            byte[] bits = new byte[acceptBytes];
+            for (int s = 0; s < stateCount; s++) {
+                if (accepting[s]) {
+                    bits[s >>> 3] |= 1 << (s & 7);
+                }
+            }
+            buf.put(bits);
+            for (int next : table) {
+                if (entryBytes == 1) {
+                    buf.put((byte) next);
+                } else if (entryBytes == 2) {
+                    buf.putShort((short) next);
+                } else {
+                    buf.putInt(next);
+                }
+            }
+            buf.flip();
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+            }
+        }
+
+        // Every header field and table entry is checked, so a truncated or corrupted file fails
+        // here with an IOException rather than later in matches
+        public static DFA load(Path path) throws IOException {
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                if (buf.remaining() < 36 || buf.getInt() != MAGIC) {
+                    throw new IOException("Not a compiled DFA file: " + path);
+                }
+                int version = buf.getInt();
+                if (version != VERSION) {
+                    throw new IOException("Compiled DFA file " + path + " has version " + version
+                            + ", expected " + VERSION + "; save it again");
+                }
+                int stateCount = buf.getInt();
+                int start = buf.getInt();
+                int minChar = buf.getInt();
+                int mapLength = buf.getInt();
+                int columns = buf.getInt();
+                int above = buf.getInt();
+                int entryBytes = buf.getInt();
+                if (stateCount <= 0 || start < 0 || start >= stateCount || minChar < 0 || mapLength < 0
+                        || minChar + (long) mapLength > Character.MAX_VALUE + 1L || columns <= 0
+                        || above < 0 || above >= columns || (entryBytes != 1 && entryBytes != 2 && entryBytes != 4)) {
+                    throw new IOException("Corrupt compiled DFA header in " + path);
+                }
+                long expected = 36 + 2L * mapLength + ((stateCount + 7L) >>> 3) + (long) stateCount * columns * entryBytes;
+                if (ch.size() != expected) {
+                    throw new IOException("Compiled DFA file " + path + " has " + ch.size() + " bytes, expected " + expected);
+                }
+                char[] classOf = new char[mapLength];
+                buf.asCharBuffer().get(classOf);
+                for (char c : classOf) {
+                    if (c >= columns) {
+                        throw new IOException("Corrupt class map in " + path);
+                    }
+                }
+                buf.position(buf.position() + 2 * classOf.length);
+                byte[] bits = new byte[(stateCount + 7) >>> 3];
+                buf.get(bits);
+                boolean[] accepting = new boolean[stateCount];
+                for (int s = 0; s < stateCount; s++) {
+                    accepting[s] = (bits[s >>> 3] & (1 << (s & 7))) != 0;
+                }
+                int[] table = new int[stateCount * columns];
+                if (entryBytes == 4) {
+                    buf.asIntBuffer().get(table);
+                } else {
+                    for (int i = 0; i < table.length; i++) {
+                        table[i] = entryBytes == 1 ? buf.get() & 0xFF : buf.getShort() & 0xFFFF;
+                    }
+                }
+                for (int next : table) {
+                    if (next < 0 || next >= stateCount) {
+                        throw new IOException("Corrupt transition table in " + path);
+                    }
+                }
+                return new DFA(stateCount, start, CharClasses.of((char) minChar, classOf, above, columns), table, accepting);
+            }
+        }
+    }
+
+    // A minimized DFA turned into a hidden class whose control flow is the automaton: every
+    // state is a block of code that reads the next char, compares it against hard-coded
+    // ranges and jumps straight to the target state's block, so there is no table and no state
+    // variable for the JIT to keep in memory. The class file is written by hand as version 49,
+    // which the verifier checks by inference, so no stack map frames are needed. The hidden class
+    // is unloaded once the matcher is unreachable. Immutable, so one instance serves every thread.
+    public static final class BytecodeMatcher {
+        static final int MAX_STATES = 512;
+        // Branch offsets are signed 16-bit, so the method has to stay under 32 KiB
+        static final int MAX_CODE_BYTES = 32767;
+
+        private final Predicate<CharSequence> generated;
+        final int stateCount;
+        final int codeBytes;
+
+        private BytecodeMatcher(Predicate<CharSequence> generated, int stateCount, int codeBytes) {
+            this.generated = generated;
+            this.stateCount = stateCount;
+            this.codeBytes = codeBytes;
+        }
+
+        // Null when the minimized DFA is too large to generate code for, or to build at all
+        public static BytecodeMatcher of(CompiledENFA nfa) {
+            DFA dfa;
+            try {
+                dfa = DFA.compile(nfa);
+            } catch (LimitExceededException e) {
+                return null;
+            }
+            if (dfa.stateCount > MAX_STATES) {
+                return null;
+            }
+            ClassWriter cw = new ClassWriter();
+            byte[] code = emit(dfa, cw);
+            if (code == null) {
+                return null;
+            }
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(cw.toClassFile(code), true);
+                @SuppressWarnings("unchecked")
+                Predicate<CharSequence> generated = (Predicate<CharSequence>) lookup
+                        .findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+                return new BytecodeMatcher(generated, dfa.stateCount, code.length);
+            } catch (Throwable t) {
+                throw new IllegalStateException("Cannot define generated matcher", t);
+            }
+        }
+
+        public boolean matches(CharSequence input) {
+            return generated.test(input);
+        }
+
+        public int stateCount() {
+            return stateCount;
+        }
+
+        public int codeBytes() {
+            return codeBytes;
+        }
+
+        // Body of test(Object): locals are 1 input, 2 length, 3 index, 4 current char
+        private static byte[] emit(DFA dfa, ClassWriter cw) {
+            Code code = new Code(cw);
+            code.op(0x2B).op(0xC0).u2(cw.charSequence).op(0x4C);        // aload_1 checkcast astore_1
+            code.op(0x2B).op(0xB9).u2(cw.length).op(1).op(0).op(0x3D); // aload_1 invokeinterface istore_2
+            code.op(0x03).op(0x3E);                                   // iconst_0 istore_3
+            int[] blockAt = new int[dfa.stateCount];
+            code.jump(0xA7, dfa.start);                                // goto start
+            for (int s = 0; s < dfa.stateCount; s++) {
+                blockAt[s] = code.size();
+                if (s == dfa.dead) {
+                    code.op(0x03).op(0xAC);                           // iconst_0 ireturn
+                    continue;
+                }
+                // if (index < length) read the next char, else return accepting
+                code.op(0x1D).op(0x1C).op(0xA1).u2(5);                // iload_3 iload_2 if_icmplt +5
+                code.op(dfa.accepting[s] ? 0x04 : 0x03).op(0xAC);
+                code.op(0x2B).op(0x1D).op(0xB9).u2(cw.charAt).op(2).op(0);
+                code.op(0x36).op(4).op(0x84).op(3).op(1);             // istore 4, iinc 3 1
+                for (int[] range : ranges(dfa, s)) {
+                    int lo = range[0], hi = range[1], target = range[2];
+                    if (lo == hi) {
+                        code.op(0x15).op(4).push(lo).jump(0x9F, target);  // if_icmpeq target
+                    } else {
+                        code.op(0x15).op(4).push(lo).op(0xA1).u2(0);      // if_icmplt past this range
+                        int patch = code.size() - 2;
+                        code.op(0x15).op(4).push(hi).jump(0xA4, target);  // if_icmple target
+                        code.patch(patch, code.size() - (patch - 1));
+                    }
+                    if (code.size() > MAX_CODE_BYTES) {
+                        return null;
+                    }
+                }
+                code.op(0x03).op(0xAC);                               // no transition: reject
+            }
+            if (code.size() > MAX_CODE_BYTES) {
+                return null;
+            }
+            return code.resolve(blockAt);
+        }
+
+        // Maximal runs of consecutive chars that lead from s to the same live state
+        private static List<int[]> ranges(DFA dfa, int s) {
+            ArrayList<int[]> ranges = new ArrayList<>();
+            CharClasses classes = dfa.classes;
+            for (int i = 0; i < classes.classOf.length; i++) {
+                int c = classes.minChar + i;
+                extend(ranges, c, c, dfa.table[s * dfa.columns + classes.classOf[i]], dfa.dead);
+            }
+            int top = classes.minChar + classes.classOf.length;
+            if (top <= Character.MAX_VALUE) {
+                extend(ranges, top, Character.MAX_VALUE, dfa.table[s * dfa.columns + classes.above], dfa.dead);
+            }
+            return ranges;
+        }
+
+        private static void extend(List<int[]> ranges, int lo, int hi, int target, int dead) {
+            if (target == dead) {
+                return;
+            }
+            int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1] == lo - 1 && last[2] == target) {
+                last[1] = hi;
+            } else {
+                ranges.add(new int[] {lo, hi, target});
+            }
+        }
+
+        // Bytecode buffer whose jumps to state blocks are patched once every block is placed
+        private static final class Code {
+            private final ClassWriter cw;
+            private byte[] bytes = new byte[256];
+            private int size;
+            private final ArrayList<int[]> fixups = new ArrayList<>();
+
+            Code(ClassWriter cw) {
+                this.cw = cw;
+            }
+
+            int size() {
+                return size;
+            }
+
+            Code op(int b) {
+                if (size == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, size * 2);
+                }
+                bytes[size++] = (byte) b;
+                return this;
+            }
+
+            Code u2(int v) {
+                return op(v >>> 8).op(v);
+            }
+
+            // Smallest instruction that pushes the int constant v
+            Code push(int v) {
+                if (v <= Byte.MAX_VALUE) {
+                    return op(0x10).op(v);                           // bipush
+                }
+                if (v <= Short.MAX_VALUE) {
+                    return op(0x11).u2(v);                           // sipush
+                }
+                int index = cw.integer(v);
+                return index <= 0xFF ? op(0x12).op(index) : op(0x13).u2(index); // ldc, ldc_w
+            }
+
+            Code jump(int opcode, int state) {
+                fixups.add(new int[] {size, state});
+                return op(opcode).u2(0);
+            }
+
+            void patch(int at, int offset) {
+                bytes[at] = (byte) (offset >>> 8);
+                bytes[at + 1] = (byte) offset;
+            }
+
+            byte[] resolve(int[] blockAt) {
+                for (int[] fixup : fixups) {
+                    patch(fixup[0] + 1, blockAt[fixup[1]] - fixup[0]);
+                }
+                return Arrays.copyOf(bytes, size);
+            }
+        }
+
+        // Constant pool and class file layout for a final class implementing Predicate
+        private static final class ClassWriter {
+            private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+            private final HashMap<String, Integer> entries = new HashMap<>();
+            private int count = 1;
+            final int thisClass = classRef("RegexEngine$Generated");
+            final int objectClass = classRef("java/lang/Object");
+            final int predicate = classRef("java/util/function/Predicate");
+            final int charSequence = classRef("java/lang/CharSequence");
+            final int objectInit = memberRef(10, objectClass, "<init>", "()V");
+            final int length = memberRef(11, charSequence, "length", "()I");
+            final int charAt = memberRef(11, charSequence, "charAt", "(I)C");
+            final int initName = utf8("<init>");
+            final int initType = utf8("()V");
+            final int testName = utf8("test");
+            final int testType = utf8("(Ljava/lang/Object;)Z");
+            final int codeName = utf8("Code");
+
+            int utf8(String s) {
+                return entry("U" + s, () -> {
+                    pool.write(1);
+                    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                    pool.write(b.length >>> 8);
+                    pool.write(b.length);
+                    pool.writeBytes(b);
+                });
+            }
+
+            int integer(int v) {
+                return entry("I" + v, () -> {
+                    pool.write(3);
+                    writeU4(pool, v);
+                });
+            }
+
+            private int classRef(String name) {
+                int nameIndex = utf8(name);
+                return entry("C" + name, () -> {
+                    pool.write(7);
+                    writeU2(pool, nameIndex);
+                });
+            }
+
+            // tag 10 is a class method, 11 an interface method
+            private int memberRef(int tag, int owner, String name, String type) {
+                int nameIndex = utf8(name), typeIndex = utf8(type);
+                int nameAndType = entry("N" + name + type, () -> {
+                    pool.write(12);
+                    writeU2(pool, nameIndex);
+                    writeU2(pool, typeIndex);
+                });
+                return entry("M" + owner + name + type, () -> {
+                    pool.write(tag);
+                    writeU2(pool, owner);
+                    writeU2(pool, nameAndType);
+                });
+            }
+
+            private int entry(String key, Runnable write) {
+                Integer index = entries.get(key);
+                if (index == null) {
+                    write.run();
+                    index = count++;
+                    entries.put(key, index);
+                }
+                return index;
+            }
+
+            byte[] toClassFile(byte[] test) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                writeU4(out, 0xCAFEBABE);
+                writeU2(out, 0);
+                writeU2(out, 49);
+                writeU2(out, count);
+                out.writeBytes(pool.toByteArray());
+                writeU2(out, 0x0031);                                 // public final super
+                writeU2(out, thisClass);
+                writeU2(out, objectClass);
+                writeU2(out, 1);
+                writeU2(out, predicate);
+                writeU2(out, 0);                                      // no fields
+                writeU2(out, 2);
+                byte[] init = {0x2A, (byte) 0xB7, (byte) (objectInit >>> 8), (byte) objectInit, (byte) 0xB1};
+                method(out, initName, initType, 1, 1, init);
+                method(out, testName, testType, 2, 5, test);
+                writeU2(out, 0);                                      // no class attributes
+                return out.toByteArray();
+            }
+
+            private void method(ByteArrayOutputStream out, int name, int type, int maxStack, int maxLocals, byte[] code) {
+                writeU2(out, 0x0001);
+                writeU2(out, name);
+                writeU2(out, type);
+                writeU2(out, 1);
+                writeU2(out, codeName);
+                writeU4(out, 12 + code.length);
+                writeU2(out, maxStack);
+                writeU2(out, maxLocals);
+                writeU4(out, code.length);
+                out.writeBytes(code);
+                writeU2(out, 0);                                      // no exception table
+                writeU2(out, 0);                                      // no code attributes
+            }
+
+            private static void writeU2(ByteArrayOutputStream out, int v) {
+                out.write(v >>> 8);
+                out.write(v);
+            }
+
+            private static void writeU4(ByteArrayOutputStream out, int v) {
+                writeU2(out, v >>> 16);
+                writeU2(out, v);
+            }
+        }
+    }
+
+    // Many inputs stepped through one minimized DFA in lockstep, one lane per input, so every
+    // step is a set of independent table lookups rather than one long dependency chain. Each
+    // CHUNK of steps first reads every lane's chars in order and stores their classes one step
+    // per row. An extra STAY column maps each state to itself for lanes whose input has ended,
+    // so stepping through the rows needs no per-lane branch. With jdk.incubator.vector in the
+    // boot layer and VectorBatchKernel on the class path, a step is one SIMD gather; otherwise
+    // the scalar kernel interleaves the same lookups. -Dregexengine.vector=false forces the
+    // scalar kernel. Immutable, so one instance can be shared between threads.
+    public static final class BatchMatcher {
+        static final int SCALAR_LANES = 8;
+        // Steps per pass over the inputs; every lane being dead is checked between chunks
+        static final int CHUNK = 64;
+        static final String VECTOR_KERNEL = "VectorBatchKernel";
+
+        interface Kernel {
+            // Sets accepted[i] for every i in [from, to)
+            void run(BatchMatcher m, CharSequence[] inputs, int from, int to, boolean[] accepted);
+        }
+
+        static final Kernel SCALAR = BatchMatcher::scalar;
+        private static final Kernel VECTOR = loadVectorKernel();
+
+        final CharClasses classes;
+        // Entries are target * stride, so a step is table[state + class] with no multiply
+        final int[] table;
+        final int stride;
+        final int stay;
+        final int start;
+        final int dead;
+        // Indexed by state / stride
+        final boolean[] accepting;
+        private final Kernel kernel;
+
+        private BatchMatcher(DFA dfa, Kernel kernel) {
+            this.classes = dfa.classes;
+            this.stride = dfa.columns + 1;
+            this.stay = dfa.columns;
+            this.table = new int[dfa.stateCount * stride];
+            for (int s = 0; s < dfa.stateCount; s++) {
+                for (int c = 0; c < dfa.columns; c++) {
+                    table[s * stride + c] = dfa.table[s * dfa.columns + c] * stride;
+                }
+                table[s * stride + stay] = s * stride;
+            }
+            this.start = dfa.start * stride;
+            this.dead = dfa.dead < 0 ? -1 : dfa.dead * stride;
+            this.accepting = dfa.accepting;
+            this.kernel = kernel;
+        }
+
+        public static BatchMatcher of(CompiledENFA nfa) {
+            return of(nfa, true);
+        }
+
+        // vectorize only asks for the SIMD kernel; it is used when it could be loaded
+        public static BatchMatcher of(CompiledENFA nfa, boolean vectorize) {
+            return new BatchMatcher(DFA.compile(nfa), vectorize && VECTOR != null ? VECTOR : SCALAR);
+        }
+
+        public boolean isVectorized() {
+            return kernel != SCALAR;
+        }
+
+        // accepted[i] is isAccepted(pattern, inputs.get(i))
+        public boolean[] matches(List<? extends CharSequence> inputs) {
+            CharSequence[] array = inputs.toArray(new CharSequence[0]);
+            boolean[] accepted = new boolean[array.length];
+            kernel.run(this, array, 0, array.length, accepted);
+            return accepted;
+        }
+
+        // Null unless the incubator module is present and the kernel class was built with it
+        private static Kernel loadVectorKernel() {
+            if (!Boolean.parseBoolean(System.getProperty("regexengine.vector", "true"))
+                    || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+                return null;
+            }
+            try {
+                return (Kernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+                return null;
+            }
+        }
+
+        static void scalar(BatchMatcher m, CharSequence[] inputs, int from, int to, boolean[] accepted) {
+            int[] table = m.table;
+            int[] state = new int[SCALAR_LANES];
+            int[] length = new int[SCALAR_LANES];
+            int[] rows = new int[CHUNK * SCALAR_LANES];
+            for (int base = from; base < to; base += SCALAR_LANES) {
+                int lanes = Math.min(SCALAR_LANES, to - base);
+                int longest = m.lengths(inputs, base, lanes, length, SCALAR_LANES);
+                Arrays.fill(state, m.start);
+                for (int at = 0; at < longest && !allDead(m, state, lanes); at += CHUNK) {
+                    int steps = Math.min(CHUNK, longest - at);
+                    m.classRows(inputs, base, length, SCALAR_LANES, at, steps, rows);
+                    for (int row = 0; row < steps * SCALAR_LANES; row += SCALAR_LANES) {
+                        for (int l = 0; l < SCALAR_LANES; l++) {
+                            state[l] = table[state[l] + rows[row + l]];
+                        }
+                    }
+                }
+                for (int l = 0; l < lanes; l++) {
+                    accepted[base + l] = m.accepting[state[l] / m.stride];
+                }
+            }
+        }
+
+        // Fills length[0..width) for inputs[base..base + count) and zero past count; returns the longest
+        int lengths(CharSequence[] inputs, int base, int count, int[] length, int width) {
+            int longest = 0;
+            for (int l = 0; l < width; l++) {
+                length[l] = l < count ? inputs[base + l].length() : 0;
+                longest = Math.max(longest, length[l]);
+            }
+            return longest;
+        }
+
+        // Classes of the chars at [at, at + steps) of each lane, rows[k * width + l] for step at + k,
+        // STAY where lane l's input has ended
+        void classRows(CharSequence[] inputs, int base, int[] length, int width, int at, int steps, int[] rows) {
+            for (int l = 0; l < width; l++) {
+                int end = Math.min(length[l], at + steps);
+                int k = 0;
+                if (end > at) {
+                    CharSequence input = inputs[base + l];
+                    for (; at + k < end; k++) {
+                        rows[k * width + l] = classes.classOf(input.charAt(at + k));
+                    }
+                }
+                for (; k < steps; k++) {
+                    rows[k * width + l] = stay;
+                }
+            }
+        }
+
+        private static boolean allDead(BatchMatcher m, int[] state, int lanes) {
+            for (int l = 0; l < lanes; l++) {
+                if (state[l] != m.dead) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Unanchored leftmost-longest search over bytes, each byte read as the char of the same value.
+    // A lazily built DFA for "anything, then the pattern" scans for the first position where a
+    // match ends; it tracks only threads begun before the current position, so reaching its empty
+    // state proves no earlier start can still match. The exact span then comes from a Pike-style
+    // pass that carries each thread's start, beginning at the last such position.
+    // Not thread-safe; give each thread its own Searcher.
+    public static final class Searcher {
+        static final int MAX_CACHED_STATES = 4096;
+        static final long WINDOW_BYTES = 1L << 30;
+        private static final int UNKNOWN = -1;
+        private static final int EMPTY = 0;
+        private static final long NO_MATCH = -1;
+
+        public interface SpanConsumer {
+            void accept(long start, long end);
+        }
+
+        final CompiledENFA nfa;
+        // Char class of each byte value; the table has one column per class
+        private final int[] byteClass = new int[256];
+        private final int columns;
+        private final int[] startClosure;
+        private final HashMap<StateSet, Integer> ids = new HashMap<>();
+        // Threads begun before the current position plus a fresh start, per DFA state
+        private final ArrayList<int[]> sets = new ArrayList<>();
+        private int[] table = new int[0];
+        private boolean[] accepting = new boolean[0];
+        private final int[] scratch;
+        private final int[] mark;
+        private int generation;
+
+        private SparseSet current;
+        private SparseSet next;
+        private int[] currentStarts;
+        private int[] nextStarts;
+        private final int[] stack;
+        // Earliest offset a match can still start at when find runs out of input
+        private int restart;
+        private long misses;
+
+        public Searcher(CompiledENFA nfa) {
+            this.nfa = nfa;
+            for (int b = 0; b < 256; b++) {
+                byteClass[b] = nfa.classes.classOf((char) b);
+            }
+            this.columns = nfa.classes.count;
+            this.scratch = new int[nfa.stateCount];
+            this.mark = new int[nfa.stateCount];
+            this.startClosure = sorted(nfa.addClosure(nfa.start, scratch, 0, mark, nextGeneration()));
+            this.current = new SparseSet(nfa.stateCount);
+            this.next = new SparseSet(nfa.stateCount);
+            this.currentStarts = new int[nfa.stateCount];
+            this.nextStarts = new int[nfa.stateCount];
+            this.stack = new int[nfa.stateCount];
+            flush();
+        }
+
+        public int cachedStates() {
+            return sets.size();
+        }
+
+        // Reports every non-overlapping match in buf[position, limit) and returns how many there were
+        public long findAll(ByteBuffer buf, SpanConsumer sink) {
+            int base = buf.position(), limit = buf.limit();
+            long count = 0;
+            for (int from = base; from <= limit; ) {
+                long span = find(buf, from, limit, true);
+                if (span == NO_MATCH) {
+                    break;
+                }
+                int start = (int) (span >>> 32), end = (int) span;
+                sink.accept(start - base, end - base);
+                count++;
+                from = end > start ? end : end + 1;
+            }
+            return count;
+        }
+
+        // Maps the file a window at a time; byte offsets are reported relative to the file start
+        public long findAll(Path file, SpanConsumer sink) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size(), base = 0, count = 0;
+                while (true) {
+                    int length = (int) Math.min(WINDOW_BYTES, size - base);
+                    boolean last = base + length == size;
+                    MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+                    int from = 0;
+                    while (from <= length) {
+                        long span = find(buf, from, length, last);
+                        if (span == NO_MATCH) {
+                            break;
+                        }
+                        int start = (int) (span >>> 32), end = (int) span;
+                        sink.accept(base + start, base + end);
+                        count++;
+                        from = end > start ? end : end + 1;
+                    }
+                    if (last) {
+                        return count;
+                    }
+                    if (restart == 0) {
+                        throw new IllegalStateException("Match attempt at offset " + base
+                                + " is longer than the " + WINDOW_BYTES + " byte mapping window");
+                    }
+                    // Slide the window so a match still in progress is seen whole
+                    base += restart;
+                }
+            }
+        }
+
+        // Leftmost-longest match in buf[from, limit) packed as start << 32 | end, or NO_MATCH.
+        // Without endOfInput a match that could still grow past limit is not reported yet and
+        // restart tells the caller where to resume once more input is available.
+        long find(ByteBuffer buf, int from, int limit, boolean endOfInput) {
+            int s = EMPTY, fresh = from;
+            int i = from;
+            long missesBefore = misses;
+            while (!accepting[s] && i < limit) {
+                int col = byteClass[buf.get(i++) & 0xFF];
+                int t = table[s * columns + col];
+                s = t != UNKNOWN ? t : step(s, col);
+                if (s == EMPTY) {
+                    fresh = i;
+                }
+            }
+            if (Metrics.enabled) {
+                Metrics.searcher(i - from, misses - missesBefore);
+            }
+            if (!accepting[s]) {
+                restart = s == EMPTY ? limit : fresh;
+                return NO_MATCH;
+            }
+            return extend(buf, fresh, limit, endOfInput);
+        }
+
+        // Pike simulation from a position no live thread predates; threads stay ordered by start
+        private long extend(ByteBuffer buf, int from, int limit, boolean endOfInput) {
+            current.clear();
+            addThread(nfa.start, from, current, currentStarts);
+            int bestStart = -1, bestEnd = -1;
+            for (int i = from; ; i++) {
+                if (current.contains(nfa.accept)) {
+                    int start = currentStarts[nfa.accept];
+                    if (bestStart < 0 || start < bestStart || start == bestStart && i > bestEnd) {
+                        bestStart = start;
+                        bestEnd = i;
+                    }
+                }
+                if (bestStart >= 0) {
+                    while (current.size > 0 && currentStarts[current.dense[current.size - 1]] > bestStart) {
+                        current.size--;
+                    }
+                }
+                if (current.size == 0) {
+                    break;
+                }
+                if (i == limit) {
+                    if (endOfInput) {
+                        break;
+                    }
+                    restart = currentStarts[current.dense[0]];
+                    return NO_MATCH;
+                }
+                char c = (char) (buf.get(i) & 0xFF);
+                next.clear();
+                for (int k = 0; k < current.size; k++) {
+                    int s = current.dense[k];
+                    for (int e = nfa.offsets[s + 1] - 1; e >= nfa.offsets[s] && nfa.labels[e] != CompiledENFA.EPSILON_EDGE; e--) {
+                        if (nfa.labels[e] <= c && c <= nfa.ends[e]) {
+                            addThread(nfa.targets[e], currentStarts[s], next, nextStarts);
+                        }
+                    }
+                }
+                if (bestStart < 0) {
+                    addThread(nfa.start, i + 1, next, nextStarts);
+                }
+                SparseSet tmp = current;
+                current = next;
+                next = tmp;
+                int[] tmpStarts = currentStarts;
+                currentStarts = nextStarts;
+                nextStarts = tmpStarts;
+            }
+            if (bestStart < 0) {
+                restart = limit;
+                return NO_MATCH;
+            }
+            return (long) bestStart << 32 | bestEnd;
+        }
+
+        private void addThread(int state, int start, SparseSet set, int[] starts) {
+            if (set.contains(state)) {
+                return;
+            }
+            set.add(state);
+            starts[state] = start;
+            int top = 0;
+            stack[top++] = state;
+            while (top > 0) {
+                int s = stack[--top];
+                for (int e = nfa.offsets[s]; e < nfa.offsets[s + 1] && nfa.labels[e] == CompiledENFA.EPSILON_EDGE; e++) {
+                    int t = nfa.targets[e];
+                    if (!set.contains(t)) {
+                        set.add(t);
+                        starts[t] = start;
+                        stack[top++] = t;
+                    }
+                }
+            }
+        }
+
+        private int step(int s, int col) {
+            misses++;
+            int[] from = sets.get(s);
+            int size = nfa.step(from, from.length, nfa.classes.representative[col], scratch, mark, nextGeneration());
+            int[] key = sorted(size);
+            Integer id = ids.get(new StateSet(key));
+            if (id == null) {
+                if (sets.size() >= MAX_CACHED_STATES) {
+                    // Cache full: start over with just the target, s is gone so skip the table entry
+                    flush();
+                    return add(key);
+                }
+                id = add(key);
+            }
+            table[s * columns + col] = id;
+            return id;
+        }
+
+        private void flush() {
+            ids.clear();
+            sets.clear();
+            add(new int[0]);
+        }
+
+        // The stored set is the key plus a fresh start at the current position
+        private int add(int[] key) {
+            int gen = nextGeneration(), size = 0;
+            for (int q : key) {
+                mark[q] = gen;
+                scratch[size++] = q;
+            }
+            for (int q : startClosure) {
+                if (mark[q] != gen) {
+                    mark[q] = gen;
+                    scratch[size++] = q;
+                }
+            }
+            int[] set = sorted(size);
+            int id = sets.size();
+            sets.add(set);
+            ids.put(new StateSet(key), id);
+            if (id >= accepting.length) {
+                accepting = Arrays.copyOf(accepting, Math.max(16, accepting.length * 2));
+                table = Arrays.copyOf(table, accepting.length * columns);
+            }
+            Arrays.fill(table, id * columns, (id + 1) * columns, UNKNOWN);
+            accepting[id] = Arrays.binarySearch(set, nfa.accept) >= 0;
+            return id;
+        }
+
+        private int[] sorted(int size) {
+            int[] set = Arrays.copyOf(scratch, size);
+            Arrays.sort(set);
+            return set;
+        }
+
+        private int nextGeneration() {
+            if (++generation == 0) {
+                Arrays.fill(mark, 0);
+                generation = 1;
+            }
+            return generation;
+        }
+    }
+
+    // Many patterns joined under one start state, like union, but each keeps its own accept
+    // state tagged with the pattern's index. A single lazy-DFA pass then yields every pattern
+    // that matched. Like LazyDFA, a PatternSet is meant to be used by one thread at a time.
+    public static final class PatternSet {
+        final int patternCount;
+        final CompiledENFA nfa;
+        final int[] acceptTags;
+        private final LazyDFA dfa;
+
+        public PatternSet(List<String> patterns) {
+            this(patterns, LazyDFA.DEFAULT_CACHE_BYTES);
+        }
+
+        public PatternSet(List<String> patterns, long cacheBytes) {
+            RegexEngine checker = new RegexEngine();
+            ArrayList<Transition> transitions = new ArrayList<>();
+            ArrayList<Integer> accepts = new ArrayList<>();
+            int next = 1;
+            for (String pattern : patterns) {
+                if (!checker.isValid(pattern)) {
+                    throw new IllegalArgumentException("Invalid Expression: " + pattern);
+                }
+                ENFA part = Reduction.of(isInputValid(pattern)).result;
+                transitions.add(new Transition(0, part.start + next, EPSILON));
+                for (Transition t : part.transitions) {
+                    transitions.add(new Transition(t.from + next, t.to + next, t.alpha, t.hi));
+                }
+                accepts.add(part.accept + next);
+                next += part.size();
+            }
+            ENFA combined = new ENFA(next);
+            combined.transitions.addAll(transitions);
+            this.patternCount = patterns.size();
+            this.nfa = CompiledENFA.combined(combined);
+            this.acceptTags = new int[nfa.stateCount];
+            Arrays.fill(acceptTags, -1);
+            for (int p = 0; p < accepts.size(); p++) {
+                acceptTags[accepts.get(p)] = p;
+            }
+            this.dfa = new LazyDFA(nfa, acceptTags, cacheBytes);
+        }
+
+        public int patternCount() {
+            return patternCount;
+        }
+
+        // Indices of the patterns that match the whole input, in ascending order
+        public int[] matches(CharSequence input) {
+            return dfa.matchedTags(input).clone();
+        }
+
+        public boolean matchesAny(CharSequence input) {
+            return dfa.matchedTags(input).length > 0;
+        }
+    }
+
+    // Thread-safe cache of compiled patterns keyed by regex source. Concurrent misses on the same
+    // regex share one compilation; past maxSize the least recently used entry is dropped. The map
+    // is access-ordered, so lookups and eviction are O(1) under its lock and compiling runs
+    // outside it.
+    public static final class PatternCache {
+        private final int maxSize;
+        private final Limits limits;
+        private final LinkedHashMap<String, Entry> entries;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public PatternCache(int maxSize) {
+            this(maxSize, Limits.DEFAULT);
+        }
+
+        // Patterns are compiled under limits; one that goes over them fails like an invalid one
+        public PatternCache(int maxSize, Limits limits) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+            }
+            this.maxSize = maxSize;
+            this.limits = limits;
+            this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    if (size() <= PatternCache.this.maxSize) {
+                        return false;
+                    }
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        public CompiledENFA get(String re) {
+            Entry entry;
+            boolean created = false;
+            synchronized (entries) {
+                entry = entries.get(re);
+                if (entry == null) {
+                    entry = new Entry(re, limits);
+                    entries.put(re, entry);
+                    created = true;
+                }
+            }
+            if (created) {
+                misses.increment();
+                if (Metrics.enabled) {
+                    Metrics.patternCache(false);
+                }
+                entry.task.run();
+            } else {
+                hits.increment();
+                if (Metrics.enabled) {
+                    Metrics.patternCache(true);
+                }
+            }
+            return await(re, entry);
+        }
+
+        private CompiledENFA await(String re, Entry entry) {
+            try {
+                return entry.await();
+            } catch (RuntimeException e) {
+                // Don't keep failures around; the next caller gets a fresh attempt
+                synchronized (entries) {
+                    entries.remove(re, entry);
+                }
+                throw e;
+            }
+        }
+
+        public int size() {
+            synchronized (entries) {
+                return entries.size();
+            }
+        }
+
+        public long hitCount() {
+            return hits.sum();
+        }
+
+        public long missCount() {
+            return misses.sum();
+        }
+
+        public long evictionCount() {
+            return evictions.sum();
+        }
+
+        public double hitRate() {
+            long h = hits.sum(), total = h + misses.sum();
+            return total == 0 ? 0 : (double) h / total;
+        }
+
+        public void clear() {
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+
+        private static final class Entry {
+            final FutureTask<CompiledENFA> task;
+
+            Entry(String re, Limits limits) {
+                this.task = new FutureTask<>(() -> {
+                    if (!new RegexEngine().isValid(re)) {
+                        throw new IllegalArgumentException("Invalid Expression: " + re);
+                    }
+                    return isInputValid(re, limits).compile();
+                });
+            }
+
+            CompiledENFA await() {
+                boolean interrupted = false;
+                try {
+                    while (true) {
+                        try {
+                            return task.get();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        } catch (ExecutionException e) {
+                            if (e.getCause() instanceof RuntimeException) {
+                                throw (RuntimeException) e.getCause();
+                            }
+                            throw new IllegalStateException(e.getCause());
+                        }
+                    }
+                } finally {
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+    }
+
+    // Immutable compiled pattern: the regex, its automaton and the limits it was built and matches
+    // under. Safe to share between threads; matches keeps one Matcher per calling thread.
+    public static final class CompiledPattern {
+        final String regex;
+        final CompiledENFA nfa;
+        final Limits limits;
+        private final ThreadLocal<Matcher> matchers;
+
+        private CompiledPattern(String regex, CompiledENFA nfa, Limits limits) {
+            this.regex = regex;
+            this.nfa = nfa;
+            this.limits = limits;
+            this.matchers = ThreadLocal.withInitial(() -> new Matcher(nfa, limits));
+        }
+
+        public static CompiledPattern compile(String re) {
+            return compile(re, Limits.DEFAULT);
+        }
+
+        // Throws IllegalArgumentException if re is invalid, LimitExceededException if it is too big
+        public static CompiledPattern compile(String re, Limits limits) {
+            if (!new RegexEngine().isValid(re)) {
+                throw new IllegalArgumentException("Invalid Expression: " + re);
+            }
+            return new CompiledPattern(re, isInputValid(re, limits).compile(), limits);
+        }
+
+        public String regex() {
+            return regex;
+        }
+
+        public CompiledENFA automaton() {
+            return nfa;
+        }
+
+        public boolean matches(CharSequence input) {
+            return matchers.get().matches(input);
+        }
+
+        // A Matcher of its own, for callers that keep one per thread themselves
+        public Matcher matcher() {
+            return nfa.matcher(limits);
+        }
+
+        @Override
+        public String toString() {
+            return regex;
+        }
+    }
+
+    // Named patterns for rules that change at runtime. The name-to-pattern map is never changed in
+    // place: writers compile first, then publish an updated copy with compareAndSet, retrying only
+    // the copy when another writer got in between. Readers do one volatile read and never lock. A
+    // match keeps the pattern it read, so one in flight when a new version lands finishes on the
+    // old version and the next call sees the new one.
+    public static final class PatternRegistry {
+        private final Limits limits;
+        private final AtomicReference<Map<String, CompiledPattern>> current = new AtomicReference<>(Map.of());
+
+        public PatternRegistry() {
+            this(Limits.DEFAULT);
+        }
+
+        public PatternRegistry(Limits limits) {
+            this.limits = limits;
+        }
+
+        // Null when nothing is registered under name
+        public CompiledPattern get(String name) {
+            return current.get().get(name);
+        }
+
+        public boolean matches(String name, CharSequence input) {
+            CompiledPattern pattern = get(name);
+            if (pattern == null) {
+                throw new IllegalArgumentException("No pattern named " + name);
+            }
+            return pattern.matches(input);
+        }
+
+        // Returns the version it replaced, or null
+        public CompiledPattern put(String name, String re) {
+            return publish(Map.of(name, CompiledPattern.compile(re, limits)), Set.of()).get(name);
+        }
+
+        // Readers see either every new version or none of them; if any regex fails to compile,
+        // nothing is published
+        public void putAll(Map<String, String> regexes) {
+            HashMap<String, CompiledPattern> compiled = new HashMap<>();
+            for (Map.Entry<String, String> e : regexes.entrySet()) {
+                compiled.put(e.getKey(), CompiledPattern.compile(e.getValue(), limits));
+            }
+            publish(compiled, Set.of());
+        }
+
+        // Returns the version it removed, or null
+        public CompiledPattern remove(String name) {
+            return publish(Map.of(), Set.of(name)).get(name);
+        }
+
+        // Everything registered at one instant; unmodifiable
+        public Map<String, CompiledPattern> snapshot() {
+            return current.get();
+        }
+
+        // Swaps in a copy of the current map with added put in and removed taken out; returns the
+        // map it replaced
+        private Map<String, CompiledPattern> publish(Map<String, CompiledPattern> added, Set<String> removed) {
+            while (true) {
+                Map<String, CompiledPattern> before = current.get();
+                HashMap<String, CompiledPattern> after = new HashMap<>(before);
+                after.putAll(added);
+                after.keySet().removeAll(removed);
+                if (current.compareAndSet(before, Collections.unmodifiableMap(after))) {
+                    return before;
+                }
+            }
+        }
+    }
+
+    // Process-wide instrumentation, off by default. Entry points read the enabled flag once per
+    // call and the per-character loops are left alone, so a disabled engine pays one volatile read
+    // per match. Steps per character and active-set sizes come from re-running one input in
+    // SAMPLE_EVERY through an instrumented simulation. Turn on with -Dregexengine.metrics=true or
+    // Metrics.enable(); the MBean is regexengine:type=Metrics and the JFR events are
+    // regexengine.Compile and regexengine.Match, committed only while metrics are enabled.
+    public static final class Metrics implements MetricsMBean {
+        static final String OBJECT_NAME = "regexengine:type=Metrics";
+        static final int SAMPLE_EVERY = 64;
+
+        static volatile boolean enabled;
+        private static final Metrics INSTANCE = new Metrics();
+        private static boolean registered;
+
+        final Histogram parseNanos = new Histogram();
+        final Histogram compileNanos = new Histogram();
+        final Histogram states = new Histogram();
+        final Histogram transitions = new Histogram();
+        final Histogram matchNanos = new Histogram();
+        // Largest active state set seen per sampled input
+        final Histogram peakActiveStates = new Histogram();
+        final LongAdder sampledChars = new LongAdder();
+        final LongAdder sampledSteps = new LongAdder();
+        final LongAdder sampledActiveStates = new LongAdder();
+        final LongAdder lazyLookups = new LongAdder();
+        final LongAdder lazyMisses = new LongAdder();
+        final LongAdder searchLookups = new LongAdder();
+        final LongAdder searchMisses = new LongAdder();
+        final LongAdder cacheHits = new LongAdder();
+        final LongAdder cacheMisses = new LongAdder();
+
+        // A failed MBean registration (no platform server, name taken, security manager) must not
+        // make the class unloadable, so it is reported and metrics stay off.
+        static {
+            if (Boolean.getBoolean("regexengine.metrics")) {
+                try {
+                    enable();
+                } catch (RuntimeException e) {
+                    System.err.println("regexengine.metrics: metrics disabled: " + e);
+                }
+            }
+        }
+
+        private Metrics() {
+        }
+
+        public static Metrics get() {
+            return INSTANCE;
+        }
+
+        // Registers the MBean on first use
+        public static synchronized void enable() {
+            if (!registered) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(
+                            new StandardMBean(INSTANCE, MetricsMBean.class), new ObjectName(OBJECT_NAME));
+                } catch (JMException e) {
+                    throw new IllegalStateException("Cannot register " + OBJECT_NAME, e);
+                }
+                registered = true;
+            }
+            enabled = true;
+        }
+
+        public static void disable() {
+            enabled = false;
+        }
+
+        static void parsed(long begin) {
+            INSTANCE.parseNanos.record(System.nanoTime() - begin);
+        }
+
+        static void compiled(long begin, CompiledENFA nfa) {
+            long nanos = System.nanoTime() - begin;
+            INSTANCE.compileNanos.record(nanos);
+            INSTANCE.states.record(nfa.stateCount);
+            INSTANCE.transitions.record(nfa.targets.length);
+            CompileEvent event = new CompileEvent();
+            if (event.shouldCommit()) {
+                event.states = nfa.stateCount;
+                event.transitions = nfa.targets.length;
+                event.nanos = nanos;
+                event.commit();
+            }
+        }
+
+        static MatchEvent beginMatch() {
+            MatchEvent event = new MatchEvent();
+            event.begin();
+            event.startNanos = System.nanoTime();
+            return event;
+        }
+
+        static void endMatch(MatchEvent event, CompiledENFA nfa, CharSequence input, boolean matched, String engine) {
+            event.end();
+            INSTANCE.matchNanos.record(System.nanoTime() - event.startNanos);
+            if (nfa != null && ThreadLocalRandom.current().nextInt(SAMPLE_EVERY) == 0) {
+                INSTANCE.profile(nfa, input);
+            }
+            if (event.shouldCommit()) {
+                event.length = input.length();
+                event.matched = matched;
+                event.engine = engine;
+                event.commit();
+            }
+        }
+
+        static void lazyDfa(long lookups, long misses) {
+            INSTANCE.lazyLookups.add(lookups);
+            INSTANCE.lazyMisses.add(misses);
+        }
+
+        static void searcher(long lookups, long misses) {
+            INSTANCE.searchLookups.add(lookups);
+            INSTANCE.searchMisses.add(misses);
+        }
+
+        static void patternCache(boolean hit) {
+            (hit ? INSTANCE.cacheHits : INSTANCE.cacheMisses).increment();
+        }
+
+        // Same simulation as the mark-array path of isAccepted, counting edges examined per character
+        private void profile(CompiledENFA nfa, CharSequence input) {
+            int[] current = new int[nfa.stateCount];
+            int[] next = new int[nfa.stateCount];
+            int[] mark = new int[nfa.stateCount];
+            int size = nfa.addClosure(nfa.start, current, 0, mark, 1);
+            long steps = 0, active = 0;
+            int peak = size, chars = 0;
+            for (int i = 0; i < input.length() && size > 0; i++) {
+                for (int k = 0; k < size; k++) {
+                    steps += nfa.offsets[current[k] + 1] - nfa.offsets[current[k]];
+                }
+                active += size;
+                chars++;
+                size = nfa.step(current, size, input.charAt(i), next, mark, i + 2);
+                peak = Math.max(peak, size);
+                int[] tmp = current;
+                current = next;
+                next = tmp;
+            }
+            sampledChars.add(chars);
+            sampledSteps.add(steps);
+            sampledActiveStates.add(active);
+            peakActiveStates.record(peak);
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void setEnabled(boolean on) {
+            if (on) {
+                enable();
+            } else {
+                disable();
+            }
+        }
+
+        @Override
+        public void reset() {
+            for (Histogram h : new Histogram[] {parseNanos, compileNanos, states, transitions, matchNanos, peakActiveStates}) {
+                h.reset();
+            }
+            for (LongAdder a : new LongAdder[] {sampledChars, sampledSteps, sampledActiveStates, lazyLookups,
+                    lazyMisses, searchLookups, searchMisses, cacheHits, cacheMisses}) {
+                a.reset();
+            }
+        }
+
+        @Override
+        public long getParseCount() {
+            return parseNanos.count();
+        }
+
+        @Override
+        public double getParseMeanNanos() {
+            return parseNanos.mean();
+        }
+
+        @Override
+        public long getCompileCount() {
+            return compileNanos.count();
+        }
+
+        @Override
+        public double getCompileMeanNanos() {
+            return compileNanos.mean();
+        }
+
+        @Override
+        public long getCompileP99Nanos() {
+            return compileNanos.percentile(0.99);
+        }
+
+        @Override
+        public double getMeanStates() {
+            return states.mean();
+        }
+
+        @Override
+        public long getMaxStates() {
+            return states.max();
+        }
+
+        @Override
+        public double getMeanTransitions() {
+            return transitions.mean();
+        }
+
+        @Override
+        public long getMaxTransitions() {
+            return transitions.max();
+        }
+
+        @Override
+        public long getMatchCount() {
+            return matchNanos.count();
+        }
+
+        @Override
+        public double getMatchMeanNanos() {
+            return matchNanos.mean();
+        }
+
+        @Override
+        public long getMatchP50Nanos() {
+            return matchNanos.percentile(0.5);
+        }
+
+        @Override
+        public long getMatchP99Nanos() {
+            return matchNanos.percentile(0.99);
+        }
+
+        @Override
+        public double getStepsPerChar() {
+            return ratio(sampledSteps.sum(), sampledChars.sum());
+        }
+
+        @Override
+        public double getMeanActiveStates() {
+            return ratio(sampledActiveStates.sum(), sampledChars.sum());
+        }
+
+        @Override
+        public long getPeakActiveStatesP99() {
+            return peakActiveStates.percentile(0.99);
+        }
+
+        @Override
+        public double getLazyDfaHitRate() {
+            long lookups = lazyLookups.sum();
+            return ratio(lookups - lazyMisses.sum(), lookups);
+        }
+
+        @Override
+        public double getSearcherHitRate() {
+            long lookups = searchLookups.sum();
+            return ratio(lookups - searchMisses.sum(), lookups);
+        }
+
+        @Override
+        public double getPatternCacheHitRate() {
+            long hits = cacheHits.sum();
+            return ratio(hits, hits + cacheMisses.sum());
+        }
+
+        private static double ratio(long num, long den) {
+            return den == 0 ? 0 : (double) num / den;
+        }
+    }
+
+    public interface MetricsMBean {
+        boolean isEnabled();
+
+        void setEnabled(boolean on);
+
+        void reset();
+
+        long getParseCount();
+
+        double getParseMeanNanos();
+
+        long getCompileCount();
+
+        double getCompileMeanNanos();
+
+        long getCompileP99Nanos();
+
+        double getMeanStates();
+
+        long getMaxStates();
+
+        double getMeanTransitions();
+
+        long getMaxTransitions();
+
+        long getMatchCount();
+
+        double getMatchMeanNanos();
+
+        long getMatchP50Nanos();
+
+        long getMatchP99Nanos();
+
+        double getStepsPerChar();
+
+        double getMeanActiveStates();
+
+        long getPeakActiveStatesP99();
+
+        double getLazyDfaHitRate();
+
+        double getSearcherHitRate();
+
+        double getPatternCacheHitRate();
+    }
+
+    // Power-of-two buckets: bucket b holds values whose highest set bit is b - 1, so percentiles
+    // are upper bounds within a factor of two
+    static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[65];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] = new LongAdder();
+            }
+        }
+
+        void record(long value) {
+            value = Math.max(value, 0);
+            buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        double mean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        long percentile(double p) {
+            long n = count.sum(), seen = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                seen += buckets[b].sum();
+                if (n > 0 && seen >= p * n) {
+                    return b == 0 ? 0 : Math.min(max.get(), b == 64 ? Long.MAX_VALUE : (1L << b) - 1);
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (LongAdder b : buckets) {
+                b.reset();
+            }
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+    }
+
+    @Name("regexengine.Compile")
+    @Label("Regex Compile")
+    @Category("Regex Engine")
+    static final class CompileEvent extends Event {
+        @Label("States")
+        int states;
+        @Label("Transitions")
+        int transitions;
+        @Label("Compile Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+    }
+
+    @Name("regexengine.Match")
+    @Label("Regex Match")
+    @Category("Regex Engine")
+    static final class MatchEvent extends Event {
+        @Label("Input Length")
+        int length;
+        @Label("Matched")
+        boolean matched;
+        @Label("Engine")
+        String engine;
+        transient long startNanos;
+    }
+
+    // Matches every input on the common fork-join pool; results are in input order
+    public static boolean[] matchAll(ENFA enfa, List<? extends CharSequence> inputs) {
+        long[] words = matchAll(enfa.compile(), inputs, ForkJoinPool.commonPool());
+        boolean[] results = new boolean[inputs.size()];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = (words[i >>> 6] & (1L << i)) != 0;
+        }
+        return results;
+    }
+
+    public static BitSet matchAllBits(ENFA enfa, List<? extends CharSequence> inputs) {
+        return BitSet.valueOf(matchAll(enfa.compile(), inputs, ForkJoinPool.commonPool()));
+    }
+
+    // Ordered parallel map, so the i-th result belongs to the i-th input
+    public static Stream<Boolean> matchAll(ENFA enfa, Stream<? extends CharSequence> inputs) {
+        Workers workers = new Workers(enfa.compile());
+        return inputs.parallel().map(workers::matches);
+    }
+
+    // Bit i of the result is set when input i matches
+    public static long[] matchAll(CompiledENFA nfa, List<? extends CharSequence> inputs, ForkJoinPool pool) {
+        if (!(inputs instanceof RandomAccess)) {
+            inputs = new ArrayList<>(inputs);
+        }
+        long[] words = new long[(inputs.size() + 63) >>> 6];
+        pool.invoke(new MatchTask(inputs, new Workers(nfa), words, 0, words.length));
+        return words;
+    }
+
+    // LazyDFA caches are mutable, so each is lent to one thread at a time. They are pooled for a
+    // single matchAll call, at most one per thread running at once, and are dropped with it
+    // rather than left behind in every pool thread.
+    private static final class Workers {
+        final CompiledENFA nfa;
+        private final ConcurrentLinkedQueue<LazyDFA> idle = new ConcurrentLinkedQueue<>();
+
+        Workers(CompiledENFA nfa) {
+            this.nfa = nfa;
+        }
+
+        LazyDFA take() {
+            LazyDFA dfa = idle.poll();
+            return dfa != null ? dfa : new LazyDFA(nfa, LazyDFA.DEFAULT_CACHE_BYTES);
+        }
+
+        void give(LazyDFA dfa) {
+            idle.offer(dfa);
+        }
+
+        boolean matches(CharSequence input) {
+            LazyDFA dfa = take();
+            try {
+                return dfa.matches(input);
+            } finally {
+                give(dfa);
+            }
+        }
+    }
+
+    // Splits on 64-input boundaries so each leaf owns whole words of the result
+    private static final class MatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        static final int LEAF_WORDS = 16;
+
+        final List<? extends CharSequence> inputs;
+        final Workers workers;
+        final long[] words;
+        final int fromWord;
+        final int toWord;
+
+        MatchTask(List<? extends CharSequence> inputs, Workers workers, long[] words, int fromWord, int toWord) {
+            this.inputs = inputs;
+            this.workers = workers;
+            this.words = words;
+            this.fromWord = fromWord;
+            this.toWord = toWord;
+        }
+
+        @Override
+        protected void compute() {
+            if (toWord - fromWord > LEAF_WORDS) {
+                int mid = (fromWord + toWord) >>> 1;
+                invokeAll(new MatchTask(inputs, workers, words, fromWord, mid),
+                        new MatchTask(inputs, workers, words, mid, toWord));
+                return;
+            }
+            LazyDFA dfa = workers.take();
+            try {
+                int end = Math.min(inputs.size(), toWord << 6);
+                for (int i = fromWord << 6; i < end; i++) {
+                    if (dfa.matches(inputs.get(i))) {
+                        words[i >>> 6] |= 1L << i;
+                    }
+                }
+            } finally {
+                workers.give(dfa);
+            }
+        }
+    }
+
+    // Long-running local match server: one thread per connection, a virtual thread when the
+    // runtime has them, with compiled patterns shared through a PatternCache. Frames in both
+    // directions are big-endian: int length of the rest, then an opcode or status byte and its
+    // payload. Requests may be pipelined; responses come back in order and are flushed whenever
+    // the client has nothing more queued.
+    //   COMPILE  pattern (UTF-8)                                -> OK, int pattern id
+    //   MATCH    int pattern id, int n, n x (int length, UTF-8) -> OK, int n, bitset of n bits
+    // ERROR responses carry a UTF-8 message; a malformed frame closes the connection.
+    public static final class MatchServer implements Closeable {
+        static final byte COMPILE = 1;
+        static final byte MATCH = 2;
+        static final byte OK = 0;
+        static final byte ERROR = 1;
+        static final int MAX_FRAME_BYTES = 1 << 26;
+        static final int CACHE_SIZE = 1024;
+        // Ids kept, least recently used dropped first; a dropped id gets "Unknown pattern id"
+        static final int MAX_IDS = 4 * CACHE_SIZE;
+
+        private final ServerSocketChannel server;
+        private final ExecutorService connections = connectionExecutor();
+        private final Limits limits;
+        private final PatternCache cache;
+        // Ids outlive cache evictions, an evicted pattern being recompiled on its next use, but
+        // past MAX_IDS the least recently used are dropped
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Integer, Registered> patterns = new ConcurrentHashMap<>();
+        private final AtomicInteger nextId = new AtomicInteger();
+        private final AtomicLong clock = new AtomicLong();
+
+        public MatchServer(SocketAddress address) throws IOException {
+            this(address, Limits.DEFAULT);
+        }
+
+        // A COMPILE or MATCH request that goes over limits gets an ERROR response
+        public MatchServer(SocketAddress address, Limits limits) throws IOException {
+            this.limits = limits;
+            this.cache = new PatternCache(CACHE_SIZE, limits);
+            this.server = address instanceof UnixDomainSocketAddress
+                    ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                    : ServerSocketChannel.open();
+            server.bind(address);
+        }
+
+        // "unix:<path>" for a Unix-domain socket, otherwise a TCP port on the loopback interface
+        public static SocketAddress parseAddress(String spec) {
+            return spec.startsWith("unix:")
+                    ? UnixDomainSocketAddress.of(spec.substring(5))
+                    : new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+        }
+
+        public SocketAddress address() throws IOException {
+            return server.getLocalAddress();
+        }
+
+        // Accepts connections until close is called
+        public void serve() throws IOException {
+            while (true) {
+                SocketChannel channel;
+                try {
+                    channel = server.accept();
+                } catch (AsynchronousCloseException e) {
+                    return;
+                }
+                connections.execute(() -> handle(channel));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            SocketAddress address = server.getLocalAddress();
+            server.close();
+            connections.shutdownNow();
+            if (address instanceof UnixDomainSocketAddress) {
+                Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+            }
+        }
+
+        private void handle(SocketChannel channel) {
+            // Matchers are not thread-safe, so every connection keeps its own per pattern
+            HashMap<Integer, Matcher> matchers = new HashMap<>();
+            try (channel;
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        return;
+                    }
+                    if (length < 1 || length > MAX_FRAME_BYTES) {
+                        return;
+                    }
+                    byte[] frame = new byte[length];
+                    in.readFully(frame);
+                    respond(ByteBuffer.wrap(frame), out, matchers);
+                    if (in.available() == 0) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException | BufferUnderflowException e) {
+                // The client hung up or sent a truncated frame; only this connection is affected
+            }
+        }
+
+        private void respond(ByteBuffer frame, DataOutputStream out, HashMap<Integer, Matcher> matchers) throws IOException {
+            byte op = frame.get();
+            if (op == COMPILE) {
+                String re = StandardCharsets.UTF_8.decode(frame).toString();
+                try {
+                    cache.get(re);
+                } catch (IllegalArgumentException | LimitExceededException e) {
+                    error(out, e.getMessage());
+                    return;
+                }
+                int id = ids.computeIfAbsent(re, k -> {
+                    int next = nextId.getAndIncrement();
+                    patterns.put(next, new Registered(k));
+                    return next;
+                });
+                Registered registered = patterns.get(id);
+                if (registered != null) {
+                    registered.lastUsed = clock.incrementAndGet();
+                }
+                if (patterns.size() > MAX_IDS) {
+                    evictIds();
+                }
+                out.writeInt(5);
+                out.writeByte(OK);
+                out.writeInt(id);
+            } else if (op == MATCH) {
+                int id = frame.getInt();
+                Registered registered = patterns.get(id);
+                if (registered == null) {
+                    error(out, "Unknown pattern id " + id);
+                    return;
+                }
+                registered.lastUsed = clock.incrementAndGet();
+                CompiledENFA nfa = cache.get(registered.re);
+                Matcher matcher = matchers.get(id);
+                if (matcher == null || matcher.nfa != nfa) {
+                    if (matchers.size() >= MAX_IDS) {
+                        // Entries for dropped ids would otherwise pile up on a long connection
+                        matchers.clear();
+                    }
+                    matcher = nfa.matcher(limits);
+                    matchers.put(id, matcher);
+                }
+                int n = frame.getInt();
+                if (n < 0 || n > frame.remaining() / 4) {
+                    throw new BufferUnderflowException();
+                }
+                byte[] bits = new byte[(n + 7) >>> 3];
+                for (int i = 0; i < n; i++) {
+                    int length = frame.getInt();
+                    if (length < 0 || length > frame.remaining()) {
+                        throw new BufferUnderflowException();
+                    }
+                    String input = new String(frame.array(), frame.position(), length, StandardCharsets.UTF_8);
+                    frame.position(frame.position() + length);
+                    try {
+                        if (matcher.matches(input)) {
+                            bits[i >>> 3] |= 1 << (i & 7);
+                        }
+                    } catch (LimitExceededException e) {
+                        // The rest of the frame is dropped; the connection stays usable
+                        error(out, e.getMessage());
+                        return;
+                    }
+                }
+                out.writeInt(5 + bits.length);
+                out.writeByte(OK);
+                out.writeInt(n);
+                out.write(bits);
+            } else {
+                error(out, "Unknown opcode " + op);
+            }
+        }
+
+        private synchronized void evictIds() {
+            while (patterns.size() > MAX_IDS) {
+                Map.Entry<Integer, Registered> oldest = null;
+                for (Map.Entry<Integer, Registered> e : patterns.entrySet()) {
+                    if (oldest == null || e.getValue().lastUsed < oldest.getValue().lastUsed) {
+                        oldest = e;
+                    }
+                }
+                if (oldest == null) {
+                    return;
+                }
+                if (patterns.remove(oldest.getKey(), oldest.getValue())) {
+                    ids.remove(oldest.getValue().re, oldest.getKey());
+                }
+            }
+        }
+
+        private static final class Registered {
+            final String re;
+            volatile long lastUsed;
+
+            Registered(String re) {
+                this.re = re;
+            }
+        }
+
+        private static void error(DataOutputStream out, String message) throws IOException {
+            byte[] text = message.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(1 + text.length);
+            out.writeByte(ERROR);
+            out.write(text);
+        }
+
+        // Blocking client for the protocol above, one request at a time. Not thread-safe.
+        public static final class Client implements Closeable {
+            private final SocketChannel channel;
+            private final DataInputStream in;
+            private final DataOutputStream out;
+
+            public Client(SocketAddress address) throws IOException {
+                this.channel = SocketChannel.open(address);
+                this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+                this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            }
+
+            public int compile(String re) throws IOException {
+                byte[] text = re.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(1 + text.length);
+                out.writeByte(COMPILE);
+                out.write(text);
+                return receive().getInt();
+            }
+
+            public boolean[] match(int id, List<String> inputs) throws IOException {
+                byte[][] encoded = new byte[inputs.size()][];
+                int length = 9;
+                for (int i = 0; i < encoded.length; i++) {
+                    encoded[i] = inputs.get(i).getBytes(StandardCharsets.UTF_8);
+                    length += 4 + encoded[i].length;
+                }
+                out.writeInt(length);
+                out.writeByte(MATCH);
+                out.writeInt(id);
+                out.writeInt(encoded.length);
+                for (byte[] input : encoded) {
+                    out.writeInt(input.length);
+                    out.write(input);
+                }
+                ByteBuffer reply = receive();
+                boolean[] result = new boolean[reply.getInt()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = (reply.get(4 + (i >>> 3)) & (1 << (i & 7))) != 0;
+                }
+                return result;
+            }
+
+            // Payload of the next OK response; an ERROR response becomes IllegalArgumentException
+            private ByteBuffer receive() throws IOException {
+                out.flush();
+                byte[] frame = new byte[in.readInt()];
+                in.readFully(frame);
+                if (frame[0] != OK) {
+                    throw new IllegalArgumentException(new String(frame, 1, frame.length - 1, StandardCharsets.UTF_8));
+                }
+                return ByteBuffer.wrap(frame, 1, frame.length - 1).slice();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        }
+
+        // Virtual threads need JDK 21; on older runtimes fall back to a cached platform pool
+        private static ExecutorService connectionExecutor() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return Executors.newCachedThreadPool(task -> {
+                    Thread thread = new Thread(task, "regex-connection");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+
+    // Streams newline-separated input through matcher, printing true/false per line, only the
+    // matching lines, or only the final count; returns the number of matching lines
+    static long runBatch(Predicate<CharSequence> matcher, ReadableByteChannel in, Writer out,
+            boolean countOnly, boolean matchingOnly, boolean stats) throws IOException {
+        long begin = System.nanoTime();
+        long lines = 0, matched = 0, bytes = 0;
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer byteBuf = ByteBuffer.allocateDirect(1 << 16);
+        CharBuffer charBuf = CharBuffer.allocate(1 << 16);
+        char[] chars = charBuf.array();
+        StringBuilder line = new StringBuilder();
+        boolean eof = false, done = false;
+        while (!done) {
+            if (!eof) {
+                int n = in.read(byteBuf);
+                eof = n < 0;
+                bytes += Math.max(n, 0);
+            }
+            byteBuf.flip();
+            CoderResult result = decoder.decode(byteBuf, charBuf, eof);
+            // An overflow leaves bytes behind, so only stop once everything has been decoded
+            done = eof && result.isUnderflow();
+            if (done) {
+                decoder.flush(charBuf);
+            }
+            byteBuf.compact();
+            int from = 0, end = charBuf.position();
+            for (int i = 0; i < end; i++) {
+                if (chars[i] == '\n') {
+                    line.append(chars, from, i - from);
+                    from = i + 1;
+                    lines++;
+                    if (emitLine(matcher, line, out, countOnly, matchingOnly)) {
+                        matched++;
+                    }
+                }
+            }
+            line.append(chars, from, end - from);
+            charBuf.clear();
+            if (done && line.length() > 0) {
+                lines++;
+                if (emitLine(matcher, line, out, countOnly, matchingOnly)) {
+                    matched++;
+                }
+            }
+            out.flush();
+        }
+        if (countOnly) {
+            out.write(matched + "\n");
+        }
+        out.flush();
+        if (stats) {
+            double seconds = Math.max(System.nanoTime() - begin, 1) / 1e9;
+            System.err.printf("%d lines, %d matched, %d bytes in %.3f s (%.0f lines/s, %.1f MB/s)%n",
+                    lines, matched, bytes, seconds, lines / seconds, bytes / seconds / 1e6);
+        }
+        return matched;
+    }
+
+    private static boolean emitLine(Predicate<CharSequence> matcher, StringBuilder line, Writer out,
+            boolean countOnly, boolean matchingOnly) throws IOException {
+        int len = line.length();
+        if (len > 0 && line.charAt(len - 1) == '\r') {
+            line.setLength(len - 1);
+        }
+        boolean ok = matcher.test(line);
+        if (!countOnly) {
+            if (!matchingOnly) {
+                out.write(ok ? "true\n" : "false\n");
+            } else if (ok) {
+                out.append(line).append('\n');
+            }
+        }
+        line.setLength(0);
+        return ok;
+    }
+
+    // grep -o style: one "file:start:end:text" line per match, or "file:count" with countOnly
+    static final int MAX_SHOWN_BYTES = 256;
+
+    static long runSearch(Searcher searcher, List<String> files, Writer out, boolean countOnly, boolean stats)
+            throws IOException {
+        long begin = System.nanoTime();
+        long total = 0, bytes = 0;
+        ByteBuffer text = ByteBuffer.allocate(MAX_SHOWN_BYTES);
+        for (String name : files) {
+            Path path = Paths.get(name);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long count = searcher.findAll(path, (start, end) -> {
+                    if (countOnly) {
+                        return;
+                    }
+                    text.clear().limit((int) Math.min(end - start, MAX_SHOWN_BYTES));
+                    try {
+                        while (text.hasRemaining() && channel.read(text, start + text.position()) >= 0) {
+                        }
+                        text.flip();
+                        out.append(name).append(':').append(Long.toString(start)).append(':')
+                                .append(Long.toString(end)).append(':')
+                                .append(StandardCharsets.UTF_8.decode(text))
+                                .append(end - start > MAX_SHOWN_BYTES ? "...\n" : "\n");
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                if (countOnly) {
+                    out.write(name + ":" + count + "\n");
+                }
+                total += count;
+                bytes += channel.size();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.flush();
+        }
+        if (stats) {
+            double seconds = Math.max(System.nanoTime() - begin, 1) / 1e9;
+            System.err.printf("%d matches, %d bytes in %.3f s (%.1f MB/s)%n",
+                    total, bytes, seconds, bytes / seconds / 1e6);
+        }
+        return total;
+    }
+
+    public static void main(String[] args) {
+        String re = null, input;
+        boolean valid;
+        boolean verboseMode = false;
+        boolean batch = false, countOnly = false, matchingOnly = false, stats = false;
+        boolean bytecode = false, groups = false;
+        String saveDfa = null, loadDfa = null, inFile = null;
+        List<String> searchFiles = null;
+        String serveAddress = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("-v".equals(args[i])) {
+                verboseMode = true;
+            } else if ("-save".equals(args[i]) && i + 1 < args.length) {
+                saveDfa = args[++i];
+            } else if ("-load".equals(args[i]) && i + 1 < args.length) {
+                loadDfa = args[++i];
+            } else if ("-e".equals(args[i]) && i + 1 < args.length) {
+                re = args[++i];
+            } else if ("-batch".equals(args[i])) {
+                batch = true;
+            } else if ("-in".equals(args[i]) && i + 1 < args.length) {
+                inFile = args[++i];
+                batch = true;
+            } else if ("-count".equals(args[i])) {
+                countOnly = true;
+            } else if ("-lines".equals(args[i])) {
+                matchingOnly = true;
+            } else if ("-stats".equals(args[i])) {
+                stats = true;
+            } else if ("-bytecode".equals(args[i])) {
+                bytecode = true;
+            } else if ("-groups".equals(args[i])) {
+                groups = true;
+            } else if ("-serve".equals(args[i]) && i + 1 < args.length) {
+                serveAddress = args[++i];
+            } else if ("-grep".equals(args[i])) {
+                // Everything after -grep names a file to search
+                searchFiles = Arrays.asList(args).subList(i + 1, args.length);
+                break;
+            }
+        }
+        if (serveAddress != null) {
+            // Patterns arrive over the socket, so nothing else on the command line applies
+            try (MatchServer server = new MatchServer(MatchServer.parseAddress(serveAddress))) {
+                System.out.println("listening on " + server.address());
+                server.serve();
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Cannot serve on " + serveAddress + ": " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (searchFiles != null) {
+            if (re == null || !new RegexEngine().isValid(re)) {
+                System.out.println("Search mode needs a valid -e <regex>");
+                System.exit(1);
+            }
+            Searcher searcher;
+            try {
+                searcher = new Searcher(isInputValid(re).compile());
+            } catch (LimitExceededException e) {
+                System.out.println(e.getMessage());
+                System.exit(1);
+                return;
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid Expression");
+                System.exit(1);
+                return;
+            }
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 1 << 16);
+            try {
+                runSearch(searcher, searchFiles, out, countOnly, stats);
+            } catch (IOException e) {
+                System.out.println("I/O error: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (batch && re == null && loadDfa == null) {
+            // The input stream is all data in batch mode, so the pattern has to come from the arguments
+            System.out.println("Batch mode needs -e <regex> or -load <file>");
+            System.exit(1);
+        }
+        RegexEngine as = new RegexEngine();
+        Scanner sc = new Scanner(System.in);
+        Predicate<CharSequence> matcher;
+        // Set only when the matcher consults the prefilter; unfiltered names one that doesn't
+        Prefilter prefilter = null;
+        String unfiltered = null;
+        CaptureMatcher captures = null;
+        if (loadDfa != null) {
+            // A saved DFA replaces the regex entirely, so there is nothing to parse
+            try {
+                matcher = DFA.load(Paths.get(loadDfa))::matches;
+                unfiltered = "the loaded DFA";
+            } catch (IOException e) {
+                System.out.println("Cannot load DFA: " + e.getMessage());
+                System.exit(1);
+                return;
+            }
+        } else {
+            if (re == null) {
+                System.out.println("Enter the regular Expression:");
+                re = sc.nextLine();
+            }
+            valid = as.isValid(re);
+            if (!valid) {
+                System.out.println("Invalid Expression");
+                System.exit(1);
+                return;
+            }
+            ENFA output;
+            try {
+                output = as.isInputValid(re);
+            } catch (LimitExceededException e) {
+                System.out.println(e.getMessage());
+                System.exit(1);
+                return;
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid Expression");
+                System.exit(1);
+                return;
+            }
+            if (verboseMode) {
+                output.display();
+                System.out.println("Reduced: " + Reduction.of(output));
+            }
+            if (groups) {
+                captures = CaptureMatcher.of(output);
+            }
+            if (saveDfa != null) {
+                DFA dfa;
+                try {
+                    dfa = DFA.compile(output);
+                    dfa.save(Paths.get(saveDfa));
+                } catch (IOException | LimitExceededException e) {
+                    System.out.println("Cannot save DFA: " + e.getMessage());
+                    System.exit(1);
+                    return;
+                }
+                matcher = dfa::matches;
+                unfiltered = "the compiled DFA";
+            } else {
+                // Patterns too large to generate code for keep the table-driven matcher
+                BytecodeMatcher generated = bytecode ? BytecodeMatcher.of(output.compile()) : null;
+                if (generated != null) {
+                    matcher = generated::matches;
+                    unfiltered = "the generated matcher";
+                } else {
+                    matcher = new LazyDFA(output)::matches;
+                    prefilter = output.prefilter();
+                }
+            }
+        }
+        if (batch) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 1 << 16);
+            try (ReadableByteChannel in = inFile != null
+                    ? FileChannel.open(Paths.get(inFile), StandardOpenOption.READ)
+                    : Channels.newChannel(System.in)) {
+                runBatch(matcher, in, out, countOnly, matchingOnly, stats);
+                if (stats) {
+                    if (prefilter != null) {
+                        System.err.printf("prefilter %s passed %d of %d lines (%.1f%%)%n", prefilter.literals(),
+                                prefilter.passCount(), prefilter.checkCount(), 100 * prefilter.hitRate());
+                    } else {
+                        System.err.println(unfiltered == null ? "no prefilter" : "no prefilter: " + unfiltered + " ran");
+                    }
+                }
+            } catch (IOException e) {
+                System.out.println("I/O error: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        System.out.println("ready");
+        while (sc.hasNextLine()) {
+
+            input = sc.nextLine();
+            if(input.length()==2)
+            {
+                if(input.charAt(0)==' ' && input.charAt(1)=='*')
+                {
+                    System.out.println("false");
+                    continue;
+
+                }
+            }
+            if (captures != null) {
+                // Whole match first, then each group in order; null for groups that took no part
+                String[] text = captures.extract(input);
+                System.out.println(text == null ? "false" : "true " + Arrays.toString(text));
+            } else if (matcher.test(input)) {
+                System.out.println("true");
+            } else {
+                System.out.println("false");
             }
         }
     }
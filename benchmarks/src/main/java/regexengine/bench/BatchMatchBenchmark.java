@@ -0,0 +1,81 @@
+package regexengine.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Validating many short strings against one pattern: oneAtATime runs each through DFA.matches,
+ * scalarBatch and vectorBatch step a whole batch through the same DFA in lockstep with
+ * BatchMatcher's scalar and SIMD kernels. The fork adds jdk.incubator.vector so the SIMD kernel
+ * can load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g", "--add-modules", "jdk.incubator.vector"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BatchMatchBenchmark {
+    private static final int BATCH = 4096;
+
+    @Param({"CONCAT", "NESTED", "ALTERNATION", "STACKED"})
+    public Shape shape;
+
+    /** Inputs are between maxLength / 2 and maxLength chars long. */
+    @Param({"16", "64"})
+    public int maxLength;
+
+    private Object dfa;
+    private Object scalar;
+    private Object vector;
+    private List<String> inputs;
+
+    @Setup
+    public void setUp() {
+        Object compiled = Engine.compile(Engine.isInputValid(shape.loopPattern()));
+        dfa = Engine.compileDfa(compiled);
+        scalar = Engine.batchMatcher(compiled, false);
+        vector = Engine.batchMatcher(compiled, true);
+        if (!Engine.isVectorized(vector)) {
+            throw new IllegalStateException("SIMD kernel unavailable; is jdk.incubator.vector loaded?");
+        }
+        inputs = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            inputs.add(shape.input(maxLength / 2 + i % (maxLength / 2 + 1)));
+        }
+    }
+
+    @Benchmark
+    public int oneAtATime() {
+        int accepted = 0;
+        for (String input : inputs) {
+            if (Engine.dfaMatches(dfa, input)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    @Benchmark
+    public boolean[] scalarBatch() {
+        return Engine.batchMatches(scalar, inputs);
+    }
+
+    @Benchmark
+    public boolean[] vectorBatch() {
+        return Engine.batchMatches(vector, inputs);
+    }
+}
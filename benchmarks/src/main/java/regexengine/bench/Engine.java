@@ -0,0 +1,185 @@
+package regexengine.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * Calls into {@code RegexEngine}, which lives in the unnamed package: named packages cannot
+ * import it and JMH refuses benchmark classes outside a package. The handles are static final,
+ * so the JIT inlines them like direct calls.
+ */
+final class Engine {
+    private static final MethodHandle NEW_ENGINE;
+    private static final MethodHandle IS_VALID;
+    private static final MethodHandle IS_INPUT_VALID;
+    private static final MethodHandle COMPILE;
+    private static final MethodHandle IS_ACCEPTED;
+    private static final MethodHandle IS_ACCEPTED_COMPILED;
+    private static final MethodHandle COMPILE_DFA;
+    private static final MethodHandle DFA_MATCHES;
+    private static final MethodHandle GENERATE;
+    private static final MethodHandle GENERATED_MATCHES;
+    private static final MethodHandle BATCH_MATCHER;
+    private static final MethodHandle BATCH_MATCHES;
+    private static final MethodHandle IS_VECTORIZED;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> engine = Class.forName("RegexEngine");
+            Class<?> enfa = Class.forName("RegexEngine$ENFA");
+            Class<?> compiled = Class.forName("RegexEngine$CompiledENFA");
+            Class<?> dfa = Class.forName("RegexEngine$DFA");
+            Class<?> generated = Class.forName("RegexEngine$BytecodeMatcher");
+            Class<?> batch = Class.forName("RegexEngine$BatchMatcher");
+            NEW_ENGINE = lookup.findConstructor(engine, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            IS_VALID = lookup.findVirtual(engine, "isValid", MethodType.methodType(boolean.class, String.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, String.class));
+            IS_INPUT_VALID = lookup.findStatic(engine, "isInputValid", MethodType.methodType(enfa, String.class))
+                    .asType(MethodType.methodType(Object.class, String.class));
+            COMPILE = lookup.findVirtual(enfa, "compile", MethodType.methodType(compiled))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            IS_ACCEPTED = lookup.findStatic(engine, "isAccepted", MethodType.methodType(boolean.class, enfa, String.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, String.class));
+            IS_ACCEPTED_COMPILED = lookup.findStatic(engine, "isAccepted", MethodType.methodType(boolean.class, compiled, String.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, String.class));
+            COMPILE_DFA = lookup.findStatic(dfa, "compile", MethodType.methodType(dfa, compiled))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            DFA_MATCHES = lookup.findVirtual(dfa, "matches", MethodType.methodType(boolean.class, CharSequence.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, String.class));
+            GENERATE = lookup.findStatic(generated, "of", MethodType.methodType(generated, compiled))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            GENERATED_MATCHES = lookup.findVirtual(generated, "matches", MethodType.methodType(boolean.class, CharSequence.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, String.class));
+            BATCH_MATCHER = lookup.findStatic(batch, "of", MethodType.methodType(batch, compiled, boolean.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, boolean.class));
+            BATCH_MATCHES = lookup.findVirtual(batch, "matches", MethodType.methodType(boolean[].class, List.class))
+                    .asType(MethodType.methodType(boolean[].class, Object.class, List.class));
+            IS_VECTORIZED = lookup.findVirtual(batch, "isVectorized", MethodType.methodType(boolean.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Engine() {
+    }
+
+    static Object newEngine() {
+        try {
+            return (Object) NEW_ENGINE.invokeExact();
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean isValid(Object engine, String re) {
+        try {
+            return (boolean) IS_VALID.invokeExact(engine, re);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static Object isInputValid(String re) {
+        try {
+            return (Object) IS_INPUT_VALID.invokeExact(re);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static Object compile(Object enfa) {
+        try {
+            return (Object) COMPILE.invokeExact(enfa);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean isAccepted(Object enfa, String input) {
+        try {
+            return (boolean) IS_ACCEPTED.invokeExact(enfa, input);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean isAcceptedCompiled(Object compiled, String input) {
+        try {
+            return (boolean) IS_ACCEPTED_COMPILED.invokeExact(compiled, input);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static Object compileDfa(Object compiled) {
+        try {
+            return (Object) COMPILE_DFA.invokeExact(compiled);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean dfaMatches(Object dfa, String input) {
+        try {
+            return (boolean) DFA_MATCHES.invokeExact(dfa, input);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /** Null when the pattern is too large for a generated matcher. */
+    static Object generate(Object compiled) {
+        try {
+            return (Object) GENERATE.invokeExact(compiled);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean generatedMatches(Object generated, String input) {
+        try {
+            return (boolean) GENERATED_MATCHES.invokeExact(generated, input);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static Object batchMatcher(Object compiled, boolean vectorize) {
+        try {
+            return (Object) BATCH_MATCHER.invokeExact(compiled, vectorize);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean[] batchMatches(Object matcher, List<String> inputs) {
+        try {
+            return (boolean[]) BATCH_MATCHES.invokeExact(matcher, inputs);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    static boolean isVectorized(Object matcher) {
+        try {
+            return (boolean) IS_VECTORIZED.invokeExact(matcher);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,62 @@
+package regexengine.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The same minimized DFA run two ways: tableDriven looks each step up in DFA's transition table,
+ * generated runs the BytecodeMatcher compiled from it, where every state is a block of code.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GeneratedMatcherBenchmark {
+    @Param({"CONCAT", "NESTED", "ALTERNATION", "STACKED"})
+    public Shape shape;
+
+    @Param({"1000", "1000000"})
+    public int length;
+
+    private Object dfa;
+    private Object generated;
+    private String input;
+
+    @Setup
+    public void setUp() {
+        Object compiled = Engine.compile(Engine.isInputValid(shape.loopPattern()));
+        dfa = Engine.compileDfa(compiled);
+        generated = Engine.generate(compiled);
+        input = shape.input(length);
+        if (generated == null) {
+            throw new IllegalStateException("No generated matcher for " + shape.loopPattern());
+        }
+        String accepted = shape.input(shape.loopUnit().length() * 3);
+        if (!Engine.dfaMatches(dfa, accepted) || !Engine.generatedMatches(generated, accepted)) {
+            throw new IllegalStateException("Benchmark pattern rejects its own input: " + shape.loopPattern());
+        }
+    }
+
+    @Benchmark
+    public boolean tableDriven() {
+        return Engine.dfaMatches(dfa, input);
+    }
+
+    @Benchmark
+    public boolean generated() {
+        return Engine.generatedMatches(generated, input);
+    }
+}
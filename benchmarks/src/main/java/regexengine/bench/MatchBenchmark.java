@@ -0,0 +1,58 @@
+package regexengine.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * isAccepted throughput from 10-byte to 10 MB inputs. isAccepted takes the ENFA, as callers of the
+ * original API do, and reuses the CompiledENFA it caches on its first call; isAcceptedCompiled
+ * passes one CompiledENFA directly, so the two differ only by that cache check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MatchBenchmark {
+    @Param({"CONCAT", "NESTED", "ALTERNATION", "STACKED", "CLASS"})
+    public Shape shape;
+
+    @Param({"10", "1000", "100000", "10000000"})
+    public int length;
+
+    private Object enfa;
+    private Object compiled;
+    private String input;
+
+    @Setup
+    public void setUp() {
+        enfa = Engine.isInputValid(shape.loopPattern());
+        compiled = Engine.compile(enfa);
+        input = shape.input(length);
+        if (!Engine.isAccepted(enfa, shape.input(shape.loopUnit().length() * 3))) {
+            throw new IllegalStateException("Benchmark pattern rejects its own input: " + shape.loopPattern());
+        }
+    }
+
+    @Benchmark
+    public boolean isAccepted() {
+        return Engine.isAccepted(enfa, input);
+    }
+
+    @Benchmark
+    public boolean isAcceptedCompiled() {
+        return Engine.isAcceptedCompiled(compiled, input);
+    }
+}
@@ -0,0 +1,52 @@
+package regexengine.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Validation and Thompson construction cost as patterns grow. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParseBenchmark {
+    @Param({"CONCAT", "NESTED", "ALTERNATION", "STACKED", "CLASS"})
+    public Shape shape;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private Object engine;
+    private String pattern;
+
+    @Setup
+    public void setUp() {
+        engine = Engine.newEngine();
+        pattern = shape.pattern(size);
+        if (!Engine.isValid(engine, pattern)) {
+            throw new IllegalStateException("Benchmark pattern is invalid: " + pattern);
+        }
+    }
+
+    @Benchmark
+    public boolean isValid() {
+        return Engine.isValid(engine, pattern);
+    }
+
+    @Benchmark
+    public Object isInputValid() {
+        return Engine.isInputValid(pattern);
+    }
+}
@@ -0,0 +1,134 @@
+package regexengine.bench;
+
+/**
+ * Pattern shapes the benchmarks sweep over. Each shape builds a pattern of a given size for the
+ * parse benchmarks, and a fixed looping pattern plus an input that stays alive in it for the
+ * match benchmarks, so matching always runs to the end of the input.
+ */
+public enum Shape {
+    /** A long run of literals. */
+    CONCAT {
+        @Override
+        String pattern(int size) {
+            return repeat(LETTERS, size);
+        }
+
+        @Override
+        String loopPattern() {
+            return "(" + repeat(LETTERS, 64) + ")*";
+        }
+
+        @Override
+        String loopUnit() {
+            return repeat(LETTERS, 64);
+        }
+    },
+    /** Parentheses nested size deep, each level starred. */
+    NESTED {
+        @Override
+        String pattern(int size) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < size; i++) {
+                sb.append('(');
+            }
+            sb.append('a');
+            for (int i = 0; i < size; i++) {
+                sb.append(")*");
+            }
+            return sb.toString();
+        }
+
+        @Override
+        String loopPattern() {
+            return "((((((((((a)*b)*c)*d)*e)*f)*g)*h)*i)*j)*";
+        }
+
+        @Override
+        String loopUnit() {
+            return "abcdefghij";
+        }
+    },
+    /** One wide alternation. */
+    ALTERNATION {
+        @Override
+        String pattern(int size) {
+            StringBuilder sb = new StringBuilder("(");
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    sb.append('|');
+                }
+                sb.append(LETTERS.charAt(i % LETTERS.length()));
+            }
+            return sb.append(')').toString();
+        }
+
+        @Override
+        String loopPattern() {
+            return "(a|b|c|d|e|f|g|h|i|j|k|l|m|n|o|p|q|r|s|t|u|v|w|x|y|z)*";
+        }
+
+        @Override
+        String loopUnit() {
+            return "thequickbrownfoxjumpsoverthelazydog";
+        }
+    },
+    /** Stars and pluses stacked on one operand. */
+    STACKED {
+        @Override
+        String pattern(int size) {
+            StringBuilder sb = new StringBuilder("a");
+            for (int i = 0; i < size; i++) {
+                sb.append(i % 2 == 0 ? '*' : '+');
+            }
+            return sb.toString();
+        }
+
+        @Override
+        String loopPattern() {
+            return "(((((ab)*)+)*)+)*";
+        }
+
+        @Override
+        String loopUnit() {
+            return "ab";
+        }
+    },
+    /** Character classes under counted repetition, one range edge per class. */
+    CLASS {
+        @Override
+        String pattern(int size) {
+            return repeat("[a-z0-9]", size * 8);
+        }
+
+        @Override
+        String loopPattern() {
+            return "([a-z0-9]{3,10}[ ])*";
+        }
+
+        @Override
+        String loopUnit() {
+            return "the quick brown fox jumps over the lazy dog ";
+        }
+    };
+
+    static final String LETTERS = "abcdefghijklmnopqrstuvwxyz";
+
+    abstract String pattern(int size);
+
+    abstract String loopPattern();
+
+    abstract String loopUnit();
+
+    /** The first length characters of loopUnit repeated forever. */
+    String input(int length) {
+        return repeat(loopUnit(), length);
+    }
+
+    static String repeat(String unit, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append(unit, 0, Math.min(unit.length(), length - sb.length()));
+        }
+        return sb.toString();
+    }
+}
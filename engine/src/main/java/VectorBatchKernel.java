@@ -0,0 +1,47 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernel for {@code RegexEngine.BatchMatcher}: one vector lane per input, every step a
+ * gather from the DFA's transition table. It lives outside the engine source so that the
+ * engine still compiles and runs on its own without the incubator module. BatchMatcher loads
+ * this class by name, and only when {@code jdk.incubator.vector} is in the boot layer.
+ */
+final class VectorBatchKernel implements RegexEngine.BatchMatcher.Kernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    VectorBatchKernel() {
+        if (SPECIES.length() < 2) {
+            throw new UnsupportedOperationException("No SIMD lanes for int");
+        }
+    }
+
+    @Override
+    public void run(RegexEngine.BatchMatcher m, CharSequence[] inputs, int from, int to, boolean[] accepted) {
+        int lanes = SPECIES.length();
+        int[] length = new int[lanes];
+        int[] index = new int[lanes];
+        int[] rows = new int[RegexEngine.BatchMatcher.CHUNK * lanes];
+        for (int base = from; base < to; base += lanes) {
+            int count = Math.min(lanes, to - base);
+            int longest = m.lengths(inputs, base, count, length, lanes);
+            IntVector state = IntVector.broadcast(SPECIES, m.start);
+            // Lanes past count have no input and only ever read the STAY column
+            VectorMask<Integer> used = SPECIES.indexInRange(0, count);
+            for (int at = 0; at < longest && !state.compare(VectorOperators.EQ, m.dead, used).equals(used);
+                    at += RegexEngine.BatchMatcher.CHUNK) {
+                int steps = Math.min(RegexEngine.BatchMatcher.CHUNK, longest - at);
+                m.classRows(inputs, base, length, lanes, at, steps, rows);
+                for (int row = 0; row < steps * lanes; row += lanes) {
+                    state.add(IntVector.fromArray(SPECIES, rows, row)).intoArray(index, 0);
+                    state = IntVector.fromArray(SPECIES, m.table, 0, index, 0);
+                }
+            }
+            for (int l = 0; l < count; l++) {
+                accepted[base + l] = m.accepting[state.lane(l) / m.stride];
+            }
+        }
+    }
+}
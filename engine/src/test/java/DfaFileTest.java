@@ -0,0 +1,159 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * DFA.save and DFA.load: a loaded DFA matches like the one saved, and a damaged file fails with
+ * an IOException instead of loading into something that breaks later in matches.
+ */
+class DfaFileTest {
+    // Header fields by byte offset, see DFA.save
+    private static final int VERSION = 4;
+    private static final int STATE_COUNT = 8;
+    private static final int START = 12;
+    private static final int MIN_CHAR = 16;
+    private static final int MAP_LENGTH = 20;
+    private static final int COLUMNS = 24;
+    private static final int ABOVE = 28;
+    private static final int ENTRY_BYTES = 32;
+    private static final int CLASS_MAP = 36;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void loadedDfaMatchesLikeTheSavedOne() throws IOException {
+        String[] patterns = {
+                "(a|b)*abb", "x?y", "[a-c]+\\.[0-9]{2,3}", "", "(a|b)*a(a|b){9}", ".*\u4e2d[^a]",
+                "[\u0100-\uffff]*"};
+        Random random = new Random(4);
+        for (String re : patterns) {
+            RegexEngine.DFA dfa = RegexEngine.DFA.compile(RegexEngine.isInputValid(re));
+            Path file = dir.resolve("saved.dfa");
+            dfa.save(file);
+            RegexEngine.DFA loaded = RegexEngine.DFA.load(file);
+            assertEquals(dfa.stateCount(), loaded.stateCount(), re);
+            for (int i = 0; i < 2000; i++) {
+                String input = input(random, 14);
+                assertEquals(dfa.matches(input), loaded.matches(input), re + " on " + input);
+            }
+            Path again = dir.resolve("again.dfa");
+            loaded.save(again);
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(again), re);
+        }
+    }
+
+    @Test
+    void wideTablesUseTwoByteEntries() throws IOException {
+        RegexEngine.DFA dfa = RegexEngine.DFA.compile(RegexEngine.isInputValid("(a|b)*a(a|b){9}"));
+        Path file = dir.resolve("wide.dfa");
+        dfa.save(file);
+        assertEquals(2, ByteBuffer.wrap(Files.readAllBytes(file)).getInt(ENTRY_BYTES));
+        assertEquals(dfa.stateCount(), RegexEngine.DFA.load(file).stateCount());
+    }
+
+    @Test
+    void rejectsDamagedHeaders() throws IOException {
+        byte[] saved = save("(a|b)*abb");
+        int stateCount = ByteBuffer.wrap(saved).getInt(STATE_COUNT);
+        int columns = ByteBuffer.wrap(saved).getInt(COLUMNS);
+        assertRejected(withInt(saved, 0, 0x12345678));
+        assertRejected(withInt(saved, VERSION, 2));
+        assertRejected(withInt(saved, STATE_COUNT, 0));
+        assertRejected(withInt(saved, STATE_COUNT, -1));
+        assertRejected(withInt(saved, STATE_COUNT, stateCount + 1));
+        assertRejected(withInt(saved, START, stateCount));
+        assertRejected(withInt(saved, START, -1));
+        assertRejected(withInt(saved, MIN_CHAR, -1));
+        assertRejected(withInt(saved, MIN_CHAR, 0xFFFF));
+        assertRejected(withInt(saved, MAP_LENGTH, -1));
+        assertRejected(withInt(saved, MAP_LENGTH, Integer.MAX_VALUE));
+        assertRejected(withInt(saved, COLUMNS, 0));
+        assertRejected(withInt(saved, COLUMNS, columns + 1));
+        assertRejected(withInt(saved, ABOVE, columns));
+        assertRejected(withInt(saved, ABOVE, -1));
+        assertRejected(withInt(saved, ENTRY_BYTES, 3));
+    }
+
+    @Test
+    void rejectsBadClassMapsAndTables() throws IOException {
+        byte[] saved = save("(a|b)*abb");
+        byte[] classMap = saved.clone();
+        classMap[CLASS_MAP] = (byte) 0xFF;
+        classMap[CLASS_MAP + 1] = (byte) 0xFF;
+        assertRejected(classMap);
+        // One-byte entries, so the last byte is a table entry
+        byte[] table = saved.clone();
+        table[table.length - 1] = (byte) ByteBuffer.wrap(saved).getInt(STATE_COUNT);
+        assertRejected(table);
+    }
+
+    @Test
+    void rejectsTruncatedAndPaddedFiles() throws IOException {
+        byte[] saved = save("[a-c]+\\.[0-9]{2,3}");
+        for (int length = 0; length < saved.length; length++) {
+            assertRejected(Arrays.copyOf(saved, length));
+        }
+        assertRejected(Arrays.copyOf(saved, saved.length + 1));
+    }
+
+    @Test
+    void corruptedFilesFailToLoadOrStillMatch() throws IOException {
+        byte[] saved = save("(a|b)*a(a|b){3}c?");
+        Random random = new Random(5);
+        Path file = dir.resolve("corrupt.dfa");
+        for (int i = 0; i < 2000; i++) {
+            byte[] corrupt = saved.clone();
+            for (int flips = 1 + random.nextInt(3); flips > 0; flips--) {
+                corrupt[random.nextInt(corrupt.length)] ^= (byte) (1 << random.nextInt(8));
+            }
+            Files.write(file, corrupt);
+            RegexEngine.DFA loaded;
+            try {
+                loaded = RegexEngine.DFA.load(file);
+            } catch (IOException e) {
+                continue;
+            }
+            for (int j = 0; j < 20; j++) {
+                loaded.matches(input(random, 10));
+            }
+        }
+    }
+
+    private byte[] save(String re) throws IOException {
+        Path file = dir.resolve("original.dfa");
+        RegexEngine.DFA.compile(RegexEngine.isInputValid(re)).save(file);
+        return Files.readAllBytes(file);
+    }
+
+    private void assertRejected(byte[] contents) throws IOException {
+        Path file = dir.resolve("damaged.dfa");
+        Files.write(file, contents);
+        assertThrows(IOException.class, () -> RegexEngine.DFA.load(file));
+    }
+
+    private static byte[] withInt(byte[] contents, int offset, int value) {
+        byte[] copy = contents.clone();
+        ByteBuffer.wrap(copy).putInt(offset, value);
+        return copy;
+    }
+
+    private static String input(Random random, int maxLength) {
+        String chars = "abcxy.019\u4e2d\u0100";
+        StringBuilder sb = new StringBuilder();
+        for (int n = random.nextInt(maxLength + 1); n > 0; n--) {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Random patterns over a small alphabet, each run on random inputs through every matcher the
+ * engine has. They must all agree with java.util.regex, and so with each other.
+ */
+class DifferentialTest {
+    private static final int PATTERNS = 1500;
+    private static final int INPUTS = 25;
+    private static final String INPUT_CHARS = "abc.-\nx";
+    // Each atom as the engine spells it and as java.util.regex does
+    private static final String[][] ATOMS = {
+            {"a", "a"}, {"b", "b"}, {"c", "c"}, {".", "."}, {"[a-b]", "[a-b]"}, {"[^b]", "[^b]"},
+            {"[ac\\-]", "[ac\\-]"}, {"\\.", "\\."}, {"[.]", "[.]"}, {"[^a-c]", "[^a-c]"}, {"\\n", "\\n"}};
+
+    private final Random random = new Random(11);
+
+    @Test
+    void everyMatcherAgreesWithJavaRegex() {
+        RegexEngine checker = new RegexEngine();
+        for (int p = 0; p < PATTERNS; p++) {
+            String[] pattern = pattern(1 + random.nextInt(4));
+            String re = pattern[0];
+            assertTrue(checker.isValid(re), re);
+            // The engine's '.' stops at '\n' only, as under UNIX_LINES
+            Pattern expected = Pattern.compile(pattern[1], Pattern.UNIX_LINES);
+
+            RegexEngine.ENFA enfa = RegexEngine.isInputValid(re);
+            RegexEngine.CompiledENFA nfa = enfa.compile();
+            RegexEngine.CompiledENFA reduced = new RegexEngine.CompiledENFA(enfa, true, false);
+            RegexEngine.CompiledENFA unreduced = new RegexEngine.CompiledENFA(enfa, false, false);
+            RegexEngine.Matcher matcher = nfa.matcher();
+            RegexEngine.LazyDFA lazy = new RegexEngine.LazyDFA(nfa, RegexEngine.LazyDFA.DEFAULT_CACHE_BYTES);
+            // Small enough to flush and fall back to the NFA on most patterns
+            RegexEngine.LazyDFA tiny = new RegexEngine.LazyDFA(nfa, 300);
+            RegexEngine.DFA dfa = RegexEngine.DFA.compile(nfa);
+            RegexEngine.BytecodeMatcher bytecode = RegexEngine.BytecodeMatcher.of(nfa);
+            RegexEngine.StreamMatcher stream = new RegexEngine.StreamMatcher(nfa);
+            RegexEngine.CaptureMatcher captures = RegexEngine.CaptureMatcher.of(enfa);
+            RegexEngine.CompiledPattern compiled = RegexEngine.CompiledPattern.compile(re);
+            RegexEngine.PatternSet set = new RegexEngine.PatternSet(List.of("x", re));
+
+            List<String> inputs = new ArrayList<>();
+            for (int i = 0; i < INPUTS; i++) {
+                String input = input(10);
+                inputs.add(input);
+                boolean want = expected.matcher(input).matches();
+                String where = "/" + re + "/ on '" + input.replace("\n", "\\n") + "': ";
+                assertEquals(want, RegexEngine.isAccepted(enfa, input), where + "isAccepted(ENFA)");
+                assertEquals(want, RegexEngine.isAccepted(nfa, input), where + "isAccepted(CompiledENFA)");
+                assertEquals(want, RegexEngine.isAccepted(reduced, input), where + "reduced");
+                assertEquals(want, RegexEngine.isAccepted(unreduced, input), where + "unreduced");
+                assertEquals(want, matcher.matches(input), where + "Matcher");
+                assertEquals(want, lazy.matches(input), where + "LazyDFA");
+                assertEquals(want, tiny.matches(input), where + "LazyDFA with a tiny cache");
+                assertEquals(want, dfa.matches(input), where + "DFA");
+                if (bytecode != null) {
+                    assertEquals(want, bytecode.matches(input), where + "BytecodeMatcher");
+                }
+                if (nfa.glushkov != null) {
+                    assertEquals(want, nfa.glushkov.matches(input), where + "GlushkovMatcher");
+                }
+                stream.feed(input.toCharArray(), 0, input.length());
+                assertEquals(want, stream.finish(), where + "StreamMatcher");
+                assertEquals(want, captures.match(input) != null, where + "CaptureMatcher");
+                assertEquals(want, compiled.matches(input), where + "CompiledPattern");
+                boolean x = input.equals("x");
+                int[] tags = want && x ? new int[] {0, 1} : want ? new int[] {1} : x ? new int[] {0} : new int[0];
+                assertArrayEquals(tags, set.matches(input), where + "PatternSet");
+            }
+            boolean[] batch = RegexEngine.BatchMatcher.of(nfa, false).matches(inputs);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertEquals(expected.matcher(inputs.get(i)).matches(), batch[i],
+                        "/" + re + "/ on '" + inputs.get(i).replace("\n", "\\n") + "': BatchMatcher");
+            }
+        }
+    }
+
+    // {engine syntax, java.util.regex syntax} of a random pattern nested at most depth deep
+    private String[] pattern(int depth) {
+        int kind = random.nextInt(depth <= 0 ? 2 : 7);
+        if (kind < 2) {
+            return ATOMS[random.nextInt(ATOMS.length)];
+        }
+        if (kind == 2) {
+            String[] x = pattern(depth - 1), y = pattern(depth - 1);
+            return new String[] {x[0] + y[0], x[1] + y[1]};
+        }
+        if (kind == 3) {
+            String[] x = pattern(depth - 1), y = pattern(depth - 1);
+            return new String[] {"(" + x[0] + "|" + y[0] + ")", "(?:" + x[1] + "|" + y[1] + ")"};
+        }
+        String[] x = pattern(depth - 1);
+        String quantifier;
+        switch (random.nextInt(6)) {
+            case 0:
+                quantifier = "*";
+                break;
+            case 1:
+                quantifier = "+";
+                break;
+            case 2:
+                quantifier = "{" + random.nextInt(3) + "}";
+                break;
+            case 3:
+                quantifier = "{" + random.nextInt(3) + ",}";
+                break;
+            default:
+                int n = random.nextInt(3);
+                quantifier = "{" + n + "," + (n + random.nextInt(4)) + "}";
+        }
+        return new String[] {"(" + x[0] + ")" + quantifier, "(?:" + x[1] + ")" + quantifier};
+    }
+
+    private String input(int maxLength) {
+        StringBuilder sb = new StringBuilder();
+        for (int n = random.nextInt(maxLength + 1); n > 0; n--) {
+            sb.append(INPUT_CHARS.charAt(random.nextInt(INPUT_CHARS.length())));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Limits: each budget stops the pattern or match that goes over it with a LimitExceededException
+ * naming that budget, and leaves ones within it alone.
+ */
+class LimitsTest {
+    private static final long OPEN = Long.MAX_VALUE;
+
+    @Test
+    void budgetsMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new RegexEngine.Limits(0, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RegexEngine.Limits(1, 0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RegexEngine.Limits(1, 1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new RegexEngine.Limits(1, 1, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> RegexEngine.Limits.DEFAULT.perMatch(-1, OPEN));
+    }
+
+    @Test
+    void perMatchKeepsTheCompileBudgets() {
+        RegexEngine.Limits limits = new RegexEngine.Limits(100, 200, OPEN, OPEN).perMatch(300, 400);
+        assertEquals(100, limits.maxStates);
+        assertEquals(200, limits.dfaBytes);
+        assertEquals(300, limits.maxSteps);
+        assertEquals(400, limits.maxNanos);
+    }
+
+    @Test
+    void defaultStopsNestedRepetition() {
+        RegexEngine.LimitExceededException e = assertThrows(RegexEngine.LimitExceededException.class,
+                () -> RegexEngine.isInputValid("((a{1000}){1000}){1000}"));
+        assertEquals("states", e.limit());
+        assertEquals(RegexEngine.Limits.DEFAULT.maxStates, e.bound());
+    }
+
+    @Test
+    void stateBudgetCapsStatesAndEdges() {
+        RegexEngine.Limits limits = new RegexEngine.Limits(100, OPEN, OPEN, OPEN);
+        assertEquals(51, RegexEngine.isInputValid("a{50}", limits).size());
+        RegexEngine.LimitExceededException states = assertThrows(RegexEngine.LimitExceededException.class,
+                () -> RegexEngine.isInputValid("a{200}", limits));
+        assertEquals("states", states.limit());
+        assertEquals(100, states.bound());
+        // Few states, but ten edges between each pair of them
+        RegexEngine.LimitExceededException edges = assertThrows(RegexEngine.LimitExceededException.class,
+                () -> RegexEngine.isInputValid("[acegikmoqs]{20}", limits));
+        assertEquals("states", edges.limit());
+        assertTrue(edges.getMessage().contains("edges"), edges.getMessage());
+    }
+
+    @Test
+    void dfaBytesCapsDeterminization() {
+        RegexEngine.CompiledENFA nfa = RegexEngine.isInputValid("(a|b)*a(a|b){12}").compile();
+        RegexEngine.LimitExceededException e = assertThrows(RegexEngine.LimitExceededException.class,
+                () -> RegexEngine.DFA.compile(nfa, new RegexEngine.Limits(1 << 22, 4096, OPEN, OPEN)));
+        assertEquals("dfaBytes", e.limit());
+        assertEquals(4096, e.bound());
+        assertTrue(RegexEngine.DFA.compile(nfa).matches("a" + "b".repeat(12)));
+    }
+
+    @Test
+    void stepBudgetCapsOneMatch() {
+        RegexEngine.Limits limits = RegexEngine.Limits.DEFAULT.perMatch(20000, OPEN);
+        String longInput = "ab".repeat(20000);
+        // Bit-parallel, and too large for it
+        for (String re : new String[] {"(a|b)*", "(a|b)*(a|b){70}"}) {
+            RegexEngine.ENFA enfa = RegexEngine.isInputValid(re);
+            RegexEngine.CompiledENFA nfa = enfa.compile();
+            assertTrue(RegexEngine.isAccepted(nfa, "ab".repeat(40), limits), re);
+            RegexEngine.LimitExceededException e = assertThrows(RegexEngine.LimitExceededException.class,
+                    () -> RegexEngine.isAccepted(nfa, longInput, limits), re);
+            assertEquals("steps", e.limit());
+            assertEquals(20000, e.bound());
+            assertThrows(RegexEngine.LimitExceededException.class,
+                    () -> RegexEngine.CompiledPattern.compile(re, limits).matches(longInput), re);
+            assertThrows(RegexEngine.LimitExceededException.class,
+                    () -> RegexEngine.CaptureMatcher.of(enfa, limits).match(longInput), re);
+        }
+    }
+
+    @Test
+    void stepBudgetLeavesDeadMatchesAlone() {
+        // The simulation stops at the first char nothing can read, well inside the budget
+        RegexEngine.Limits limits = RegexEngine.Limits.DEFAULT.perMatch(1000, OPEN);
+        RegexEngine.CompiledENFA nfa = RegexEngine.isInputValid("(a|b)*(a|b){70}c").compile();
+        assertFalse(RegexEngine.isAccepted(nfa, "x" + "ab".repeat(5000), limits));
+    }
+
+    @Test
+    void timeBudgetCapsOneMatch() {
+        RegexEngine.Limits limits = RegexEngine.Limits.DEFAULT.perMatch(OPEN, 1);
+        RegexEngine.CompiledENFA nfa = RegexEngine.isInputValid("(a|b)*(a|b){70}").compile();
+        RegexEngine.LimitExceededException e = assertThrows(RegexEngine.LimitExceededException.class,
+                () -> RegexEngine.isAccepted(nfa, "ab".repeat(50000), limits));
+        assertEquals("nanos", e.limit());
+        assertEquals(1, e.bound());
+    }
+
+    @Test
+    void patternCacheDoesNotKeepPatternsOverBudget() {
+        RegexEngine.PatternCache cache = new RegexEngine.PatternCache(4, new RegexEngine.Limits(100, OPEN, OPEN, OPEN));
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            assertThrows(RegexEngine.LimitExceededException.class, () -> cache.get("a{200}"));
+            assertEquals(0, cache.size());
+            assertEquals(attempt, cache.missCount());
+        }
+        assertTrue(RegexEngine.isAccepted(cache.get("a{50}"), "a".repeat(50)));
+    }
+}